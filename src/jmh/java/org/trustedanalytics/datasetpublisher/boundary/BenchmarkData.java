@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Metadata of published datasets used by benchmarks.
+ */
+public final class BenchmarkData {
+
+    private static final String[] NAMES = {"Customer ID", "amount", "1st quarter", "Date", "e-mail"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param columns number of header fields
+     * @return metadata with header mixing plain names, names needing prefix and replacements and
+     * reserved words
+     */
+    public static Metadata metadata(int columns) {
+        final Metadata metadata = new Metadata();
+        metadata.setOrgUUID("77fca4b7-5e06-4c40-909e-36fcaff90534");
+        metadata.setTitle("Qatar: GDP (constant LCU)");
+        metadata.setDataSample(IntStream.range(0, columns)
+            .mapToObj(i -> i < NAMES.length ? NAMES[i] : NAMES[i % NAMES.length] + " " + i)
+            .collect(Collectors.joining(",")));
+        metadata.setTargetUri("hdfs://nameservice/org/dataset/000000_1");
+        metadata.setIsPublic(false);
+        return metadata;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.service.ColumnarMaterializer;
+import org.trustedanalytics.datasetpublisher.service.HiveService;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Measures publishing of a table by {@link HiveController} with Hive stubbed out, called directly
+ * and through Spring MVC with JSON body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HiveControllerBenchmark {
+
+    @Param({"10", "1000"})
+    private int columns;
+
+    private ColumnarMaterializer columnarMaterializer;
+    private HiveController controller;
+    private MockMvc mockMvc;
+    private Metadata metadata;
+    private byte[] metadataJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Config.Hue hue = new Config.Hue();
+        hue.setUrl("http://hue.example.com");
+        hue.setAvailable(true);
+        final Config.Arcadia arcadia = new Config.Arcadia();
+        arcadia.setUrl("http://arcadia.example.com");
+        arcadia.setAvailable(true);
+        final JwtToken userIdentity = new TapOauthToken(
+            JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
+        columnarMaterializer = new ColumnarMaterializer(null, null, new Config.Columnar());
+
+        controller = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(new MetadataMapper(new Config().restrictedKeywords()))
+            .withHive(new StubHiveService())
+            .withColumnar(columnarMaterializer)
+            .asWho(userIdentity)
+            .build();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        metadata = BenchmarkData.metadata(columns);
+        metadataJson = new ObjectMapper().writeValueAsBytes(metadata);
+    }
+
+    @TearDown
+    public void tearDown() {
+        columnarMaterializer.destroy();
+    }
+
+    @Benchmark
+    public Object createTable() {
+        // Hive executor of the controller runs work in the calling thread
+        return controller.createTable(metadata).getResult();
+    }
+
+    @Benchmark
+    public MvcResult createTableOverHttp() throws Exception {
+        final MvcResult pending = mockMvc.perform(post("/rest/tables")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(metadataJson))
+            .andReturn();
+        return mockMvc.perform(asyncDispatch(pending)).andReturn();
+    }
+
+    /**
+     * Hive service which doesn't talk to Hive.
+     */
+    private static class StubHiveService extends HiveService {
+
+        StubHiveService() {
+            super(null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public void createTable(HiveTable table, JwtToken userIdentity) {
+        }
+    }
+}
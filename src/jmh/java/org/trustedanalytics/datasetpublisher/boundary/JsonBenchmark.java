@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures JSON (de)serialization of request and response bodies of the publish endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"10", "1000", "5000"})
+    private int columns;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Metadata metadata;
+    private byte[] metadataJson;
+    private CreateTableResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        metadata = BenchmarkData.metadata(columns);
+        metadataJson = objectMapper.writeValueAsBytes(metadata);
+        response = new CreateTableResponse(
+            "http://hue.example.com/77fca4b7_5e06_4c40_909e_36fcaff90534/qatar__gdp__constant_lcu_",
+            "http://arcadia.example.com");
+    }
+
+    @Benchmark
+    public Metadata readMetadata() throws IOException {
+        return objectMapper.readValue(metadataJson, Metadata.class);
+    }
+
+    @Benchmark
+    public byte[] writeMetadata() throws IOException {
+        return objectMapper.writeValueAsBytes(metadata);
+    }
+
+    @Benchmark
+    public byte[] writeCreateTableResponse() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
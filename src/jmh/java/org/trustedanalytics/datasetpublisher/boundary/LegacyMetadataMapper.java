@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import org.apache.commons.lang.StringUtils;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Previous implementation of {@link MetadataMapper}, composing per-step lambdas and regular
+ * expressions, kept as a baseline for benchmarks.
+ */
+public class LegacyMetadataMapper implements Function<Metadata, HiveTable> {
+
+    private final Set<String> restrictedKeywords;
+
+    public LegacyMetadataMapper(Set<String> restrictedKeywords) {
+        this.restrictedKeywords = restrictedKeywords;
+    }
+
+    @Override
+    public HiveTable apply(Metadata metadata) {
+        final List<String> fields = Arrays.asList(metadata.getDataSample().split(","));
+        checkDuplicates(fields, "Duplicated header fields in file");
+
+        final String tableName = toValidTableName(metadata.getTitle());
+        final String dbName = metadata.getOrgUUID().replace('-', '_');
+        final List<String> columns = fields.stream()
+                .map(this::toValidTableName)
+                .collect(Collectors.toList());
+        final String path = URI.create(metadata.getTargetUri()).getPath();
+        final String location = path.substring(0, path.lastIndexOf("/"));
+
+        checkDuplicates(columns, "Duplicated columns in table");
+        return new HiveTable(dbName, tableName, columns, location, metadata.getTargetUri());
+    }
+
+    private String toValidTableName(String string) {
+        final Function<String, String> lowercase = String::toLowerCase;
+
+        return lowercase
+            .andThen(s -> s.matches("^[a-zA-Z].*") ? s : "x" + s)
+            .andThen(s -> s.replaceAll("\\W", "_"))
+            .andThen(s -> !restrictedKeywords.contains(s) ? s : s + "_")
+            .andThen(s -> StringUtils.left(s, MetadataMapper.IDENTIFIER_MAX_LEN))
+            .apply(string);
+    }
+
+    private void checkDuplicates(List<String> strings, String exceptionMessagePrefix) {
+        strings.stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
+                .entrySet()
+                .stream()
+                .filter(group -> group.getValue() > 1)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .reduce((acc, column) -> acc + ", " + column)
+                .ifPresent(duplicates -> {
+                    throw new IllegalStateException(exceptionMessagePrefix + ": " + duplicates);
+                });
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MetadataMapper} with {@link LegacyMetadataMapper} on narrow and very wide
+ * headers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MetadataMapperBenchmark {
+
+    @Param({"10", "1000", "5000"})
+    private int columns;
+
+    private Metadata metadata;
+    private MetadataMapper mapper;
+    private LegacyMetadataMapper legacyMapper;
+
+    @Setup
+    public void setUp() {
+        final Set<String> restrictedKeywords = new Config().restrictedKeywords().get();
+        mapper = new MetadataMapper(() -> restrictedKeywords);
+        legacyMapper = new LegacyMetadataMapper(restrictedKeywords);
+
+        metadata = BenchmarkData.metadata(columns);
+    }
+
+    @Benchmark
+    public HiveTable singlePass() {
+        return mapper.apply(metadata);
+    }
+
+    @Benchmark
+    public HiveTable legacy() {
+        return legacyMapper.apply(metadata);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures building of DDL statements for narrow and very wide tables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class QueryBuilderBenchmark {
+
+    @Param({"10", "1000", "5000"})
+    private int columns;
+
+    private final QueryBuilder queryBuilder = new QueryBuilder();
+    private HiveTable table;
+
+    @Setup
+    public void setUp() {
+        table = new HiveTable("77fca4b7_5e06_4c40_909e_36fcaff90534", "qatar__gdp__constant_lcu_",
+            IntStream.range(0, columns).mapToObj(i -> "column_" + i).collect(Collectors.toList()),
+            "/org/dataset");
+    }
+
+    @Benchmark
+    public String createTable() {
+        return queryBuilder.createTable(table);
+    }
+
+    @Benchmark
+    public String dropTable() {
+        return queryBuilder.dropTable(table);
+    }
+}
@@ -16,6 +16,7 @@
 package org.trustedanalytics.datasetpublisher;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -28,18 +29,35 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.trustedanalytics.cloud.auth.AuthTokenRetriever;
 import org.trustedanalytics.cloud.auth.OAuth2TokenRetriever;
 import org.trustedanalytics.datasetpublisher.boundary.ExternalTool;
+import org.trustedanalytics.datasetpublisher.entity.ColumnarCopy;
+import org.trustedanalytics.datasetpublisher.service.HiveMetrics;
+import org.trustedanalytics.datasetpublisher.service.UserCredentials;
 import org.trustedanalytics.hadoop.config.client.helper.Hive;
 import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
-import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import lombok.Getter;
+import lombok.Setter;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import static org.springframework.web.context.WebApplicationContext.SCOPE_REQUEST;
 
 @Configuration
-@EnableConfigurationProperties({Config.Hue.class, Config.Arcadia.class})
+@EnableConfigurationProperties({Config.Hue.class, Config.Arcadia.class, Config.HivePool.class,
+    Config.Jobs.class, Config.ExistenceCache.class,
+    Config.Batch.class, Config.Columnar.class,
+    Config.Inference.class, Config.Partitioning.class, Config.Statistics.class,
+    Config.SlowLog.class, Config.Guard.class, Config.Credentials.class,
+    Config.Execution.class, Config.Teardown.class, Config.Index.class,
+    Config.SchemaEvolution.class, Config.Header.class, Config.Format.class,
+    Config.Impala.class, Config.Datasets.class})
 public class Config {
 
   @Bean
@@ -54,9 +72,27 @@ public class Config {
 
   @Bean
   @Scope(value = SCOPE_REQUEST, proxyMode = ScopedProxyMode.INTERFACES)
-  public JwtToken userIdentity(AuthTokenRetriever tokenRetriever) {
+  public JwtToken userIdentity(AuthTokenRetriever tokenRetriever, HiveMetrics metrics,
+                               UserCredentials credentials) {
+    final long start = System.nanoTime();
     final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    return new TapOauthToken(tokenRetriever.getAuthToken(auth));
+    final JwtToken token = credentials.identityOf(tokenRetriever.getAuthToken(auth));
+    metrics.record(HiveMetrics.Stage.TOKEN, System.nanoTime() - start);
+    return token;
+  }
+
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService batchExecutor(Batch config) {
+    return Executors.newFixedThreadPool(config.getParallelism(),
+        new ThreadFactoryBuilder().setNameFormat("hive-batch-%d").setDaemon(true).build());
+  }
+
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService hiveExecutor(Execution config) {
+    return new ThreadPoolExecutor(config.getThreads(), config.getThreads(),
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(config.getQueueCapacity()),
+        new ThreadFactoryBuilder().setNameFormat("hive-worker-%d").setDaemon(true).build());
   }
 
   @Bean
@@ -113,4 +149,273 @@ public class Config {
   public static class Arcadia extends ExternalTool {
 
   }
+
+  /**
+   * Sizing and retirement policy of pooled HiveServer2 connections, kept per user identity.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.pool")
+  public static class HivePool {
+
+    private int minIdlePerKey = 0;
+    private int maxTotalPerKey = 8;
+    private int maxTotal = 64;
+    private long maxWaitMillis = 30000;
+    private long idleTimeoutMillis = 300000;
+    private long evictionIntervalMillis = 60000;
+    private long validationIntervalMillis = 30000;
+    private String validationQuery = "select 1";
+    private long tokenExpiryMarginMillis = 60000;
+  }
+
+  /**
+   * Optional notification of Impala about published tables, over a connection of the service
+   * itself. Notifications are sent once per window, for all tables changed within it.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "impala")
+  public static class Impala {
+
+    private boolean enabled = false;
+    /**
+     * JDBC url of impalad, e.g. jdbc:hive2://impalad:21050/;auth=noSasl
+     */
+    private String url;
+    private String username;
+    private String password;
+    private long windowMillis = 1000;
+    private int maxPending = 10000;
+    private long idleTimeoutMillis = 300000;
+  }
+
+  /**
+   * Capacity of the executor running asynchronous jobs and retention of their results.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "jobs")
+  public static class Jobs {
+
+    private int threads = 4;
+    private int queueCapacity = 100;
+    private int maxRetained = 10000;
+    private long retentionMillis = 3600000;
+  }
+
+  /**
+   * Bounds of the cache of tables known to exist in Hive.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.existence-cache")
+  public static class ExistenceCache {
+
+    private boolean enabled = true;
+    private int maxSize = 10000;
+    private long ttlMillis = 600000;
+  }
+
+  /**
+   * Limits of batch and stream requests: number of tables published in parallel, number of
+   * streamed records being processed at a time and length of a streamed record.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.batch")
+  public static class Batch {
+
+    private int parallelism = 4;
+    private int maxInFlight = 16;
+    private int maxRecordLength = 64 * 1024;
+  }
+
+  /**
+   * Executor of single table requests: number of requests run against Hive at a time, number of
+   * requests waiting for it and time after which a pending request is answered with an error.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.execution")
+  public static class Execution {
+
+    private int threads = 8;
+    private int queueCapacity = 1000;
+    private long timeoutMillis = 300000;
+  }
+
+  /**
+   * Teardown of organization databases: whether database is dropped with cascade, or its tables
+   * are dropped in batches of given size first.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.teardown")
+  public static class Teardown {
+
+    private boolean cascade = false;
+    private int batchSize = 50;
+  }
+
+  /**
+   * Index of published tables: interval of reconciliation of a database with the metastore, or
+   * 0 to reconcile databases only when they are first listed, and max page size of listing.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.index")
+  public static class Index {
+
+    private long reconcileIntervalMillis = 60000;
+    private int maxPageSize = 1000;
+  }
+
+  /**
+   * Optional in-place evolution of tables which are published again with different columns or
+   * location. Costs a look up of the existing table on each create.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.schema-evolution")
+  public static class SchemaEvolution {
+
+    private boolean enabled = false;
+  }
+
+  /**
+   * Optional columnar copies of published tables. Copies are not made unless format is set.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.columnar")
+  public static class Columnar {
+
+    private ColumnarCopy.Format format;
+    private String compression = "SNAPPY";
+    private int threads = 2;
+  }
+
+  /**
+   * Limits of header of published datasets, read from data sample or the published file.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "header")
+  public static class Header {
+
+    private int maxColumns = 10000;
+    private int maxLength = 1024 * 1024;
+  }
+
+  /**
+   * Directory holding directories of organizations, named with their ids. Published files are
+   * read only within the directory of the organization publishing them.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "datasets")
+  public static class Datasets {
+
+    private String root = "/org";
+  }
+
+  /**
+   * Detection of delimiter, header and compression of published files from their beginning.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.format")
+  public static class Format {
+
+    private boolean enabled = false;
+    private int sampleChars = 64 * 1024;
+  }
+
+  /**
+   * Inference of column types from the first rows of published files.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.inference")
+  public static class Inference {
+
+    private boolean enabled = false;
+    private int sampleRows = 1000;
+    private int maxRecordLength = 1024 * 1024;
+  }
+
+  /**
+   * Detection of partitioned directory layouts.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.partitioning")
+  public static class Partitioning {
+
+    private boolean enabled = false;
+    /**
+     * Date directory levels, e.g. yyyy/MM/dd, for layouts not following key=value convention.
+     */
+    private String datePattern;
+    private int maxDepth = 4;
+    private int maxPartitions = 10000;
+  }
+
+  /**
+   * Background collection of statistics of published tables.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.statistics")
+  public static class Statistics {
+
+    private boolean enabled = false;
+    private boolean columns = false;
+    private int threads = 1;
+    private int maxPending = 1000;
+  }
+
+  /**
+   * Log of operations on tables taking longer than the threshold, and scope the user must have
+   * been granted to read it.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.slow-log")
+  public static class SlowLog {
+
+    private long thresholdMillis = 10000;
+    private int capacity = 100;
+    private String adminScope = "console.admin";
+  }
+
+  /**
+   * Circuit breaker and bulkhead in front of HiveServer2.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "hive.guard")
+  public static class Guard {
+
+    private boolean enabled = true;
+    private int maxConcurrentCalls = 32;
+    private long maxWaitMillis = 1000;
+    private int windowSize = 20;
+    private int minimumCalls = 10;
+    private int failureRateThreshold = 50;
+    private long openMillis = 30000;
+    private int halfOpenProbes = 1;
+  }
+
+  /**
+   * Cache of user identities, by token.
+   */
+  @Getter
+  @Setter
+  @ConfigurationProperties(prefix = "credentials")
+  public static class Credentials {
+
+    private int maxTokens = 10000;
+  }
 }
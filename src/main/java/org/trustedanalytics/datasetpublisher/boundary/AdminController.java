@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import static org.springframework.http.HttpStatus.FORBIDDEN;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.service.JwtTokens;
+import org.trustedanalytics.datasetpublisher.service.SlowOperation;
+import org.trustedanalytics.datasetpublisher.service.SlowOperationLog;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiOperation;
+
+@RestController
+public class AdminController {
+
+  private final SlowOperationLog slowLog;
+  private final Config.SlowLog config;
+  private final JwtToken userIdentity;
+
+  @Autowired
+  public AdminController(SlowOperationLog slowLog, Config.SlowLog config, JwtToken userIdentity) {
+    this.slowLog = slowLog;
+    this.config = config;
+    this.userIdentity = userIdentity;
+  }
+
+  @ApiOperation(
+      value = "Get recent slow operations on tables",
+      notes = "Privilege level: Consumer of this endpoint must be granted the admin scope"
+  )
+  @RequestMapping(value = "/rest/admin/slow-operations", method = GET)
+  public ResponseEntity<List<SlowOperation>> getSlowOperations() {
+    // operations of all organizations are logged, so they are shown to admins only
+    if (!JwtTokens.hasScope(userIdentity, config.getAdminScope())) {
+      return new ResponseEntity<>(FORBIDDEN);
+    }
+    return new ResponseEntity<>(slowLog.findRecent(), OK);
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of publishing a single dataset of a batch request.
+ */
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+public class BatchItemResponse {
+
+  public enum Status {
+    CREATED, FAILED
+  }
+
+  private final int index;
+
+  private final Status status;
+
+  @JsonProperty("hue_url")
+  private final String hueUrl;
+
+  @JsonProperty("arcadia_url")
+  private final String arcadiaUrl;
+
+  private final String error;
+
+  public static BatchItemResponse created(int index, CreateTableResponse links) {
+    return new BatchItemResponse(index, Status.CREATED, links.getHueUrl(), links.getArcadiaUrl(),
+                                 null);
+  }
+
+  public static BatchItemResponse failed(int index, Exception cause) {
+    return new BatchItemResponse(index, Status.FAILED, null, null, cause.getMessage());
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads fields of the first record of delimited text as specified by RFC 4180: fields may be
+ * enclosed in double quotes, quoted fields may contain delimiters and line breaks, and a double
+ * quote inside them is escaped by another one. Text is read character by character up to the end
+ * of the first record only, so the rest of it is never looked at. The delimiter is given by the
+ * caller, so that the header is split the same way as the rows of the table.
+ */
+final class HeaderTokenizer {
+
+    private static final int BYTE_ORDER_MARK = 0xFEFF;
+
+    private HeaderTokenizer() {
+    }
+
+    /**
+     * Reads header fields. Trailing empty unquoted fields are dropped, as
+     * {@link String#split(String)} does.
+     * @param reader text, positioned at the start of the header
+     * @param delimiter delimiter of fields, e.g. {@link TextFormat#delimiter} of the table
+     * @param maxColumns max number of fields
+     * @param maxLength max number of characters of the header
+     * @return fields of the header, at least one
+     * @throws IllegalArgumentException if header exceeds limits or has unterminated quote
+     */
+    static List<String> read(Reader reader, char delimiter, int maxColumns, int maxLength)
+        throws IOException {
+        return split(record(reader, delimiter, maxLength), delimiter, maxColumns);
+    }
+
+    /**
+     * Reads the first record, without line break.
+     */
+    private static String record(Reader reader, char delimiter, int maxLength) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        boolean quoted = false;
+        // quote inside quoted field, which either escapes next quote or ends the field
+        boolean quote = false;
+        boolean fieldStart = true;
+        int c = reader.read();
+        if (c == BYTE_ORDER_MARK) {
+            c = reader.read();
+        }
+        for (; c != -1; c = reader.read()) {
+            if (text.length() == maxLength) {
+                throw new IllegalArgumentException(
+                    String.format("Header is longer than %d characters", maxLength));
+            }
+            if (quote) {
+                quote = false;
+                if (c == '"') {
+                    text.append('"');
+                    continue;
+                }
+                quoted = false;
+            }
+            if (!quoted && (c == '\n' || c == '\r')) {
+                break;
+            }
+            text.append((char) c);
+            if (quoted) {
+                quote = c == '"';
+            } else if (c == '"' && fieldStart) {
+                quoted = true;
+            } else {
+                fieldStart = c == delimiter;
+                continue;
+            }
+            fieldStart = false;
+        }
+        if (quoted && !quote) {
+            throw new IllegalArgumentException("Header has unterminated quoted field");
+        }
+        return text.toString();
+    }
+
+    private static List<String> split(String record, char delimiter, int maxColumns) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        int nonEmpty = 0;
+        boolean quoted = false;
+        boolean quote = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            final char c = record.charAt(i);
+            if (quote) {
+                quote = false;
+                if (c == '"') {
+                    field.append('"');
+                    continue;
+                }
+                quoted = false;
+            }
+            if (quoted) {
+                if (c == '"') {
+                    quote = true;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == delimiter) {
+                nonEmpty = add(fields, field, wasQuoted, nonEmpty, maxColumns);
+                wasQuoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        nonEmpty = add(fields, field, wasQuoted, nonEmpty, maxColumns);
+        // drop trailing empty fields, but keep at least one
+        return fields.subList(0, Math.max(1, nonEmpty));
+    }
+
+    /**
+     * Adds field and clears it.
+     * @return number of fields up to the last one which isn't empty or was quoted
+     */
+    private static int add(List<String> fields, StringBuilder field, boolean quoted, int nonEmpty,
+                           int maxColumns) {
+        if (fields.size() == maxColumns) {
+            throw new IllegalArgumentException(
+                String.format("Header has more than %d columns", maxColumns));
+        }
+        fields.add(field.toString());
+        final boolean empty = field.length() == 0 && !quoted;
+        field.setLength(0);
+        return empty ? nonEmpty : fields.size();
+    }
+}
@@ -15,30 +15,81 @@
  */
 package org.trustedanalytics.datasetpublisher.boundary;
 
+import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.CREATE;
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.DROP;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.scope.ScopedObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.trustedanalytics.datasetpublisher.Config;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.service.ColumnarMaterializer;
+import org.trustedanalytics.datasetpublisher.service.HiveMetrics;
 import org.trustedanalytics.datasetpublisher.service.HiveService;
+import org.trustedanalytics.datasetpublisher.service.HiveUnavailableException;
+import org.trustedanalytics.datasetpublisher.service.Job;
+import org.trustedanalytics.datasetpublisher.service.JobService;
+import org.trustedanalytics.datasetpublisher.service.TableIndex;
+import org.trustedanalytics.datasetpublisher.service.TeardownProgress;
+import org.trustedanalytics.datasetpublisher.service.UserCredentials;
 import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import io.swagger.annotations.ApiOperation;
 
 @RestController
 public class HiveController {
 
+  public static final String NDJSON = "application/x-ndjson";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HiveController.class);
+
   @Autowired
   private Config.Hue hue;
 
@@ -48,27 +99,183 @@ public class HiveController {
   @Autowired
   private HiveService hiveService;
 
+  @Autowired
+  private JobService jobService;
+
+  @Autowired
+  private ColumnarMaterializer columnarMaterializer;
+
+  @Autowired
+  @Qualifier("batchExecutor")
+  private ExecutorService batchExecutor;
+
+  @Autowired
+  private Config.Batch batchConfig;
+
+  @Autowired
+  @Qualifier("hiveExecutor")
+  private ExecutorService hiveExecutor;
+
+  @Autowired
+  private Config.Execution executionConfig;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
   @Autowired
   private Function<Metadata, HiveTable> metadataMapper;
 
   @Autowired
   private JwtToken userIdentity;
 
+  @Autowired
+  private UserCredentials credentials;
+
+  @Autowired
+  private HiveMetrics metrics;
+
+  @Autowired
+  private TableIndex tableIndex;
+
+  @Autowired
+  private Config.Index indexConfig;
+
+  @ApiOperation(
+      value = "List Hive tables published to organization",
+      notes = "Privilege level: Consumer of this endpoint must be a member of specified organization"
+  )
+  @RequestMapping(value = "/rest/tables", method = GET, params = "org")
+  @ResponseStatus(value = OK)
+  public TableListResponse listTables(@RequestParam("org") String orgUUID,
+                                      @RequestParam(defaultValue = "0") int offset,
+                                      @RequestParam(defaultValue = "100") int limit) {
+    if (offset < 0 || limit < 1 || limit > indexConfig.getMaxPageSize()) {
+      throw new IllegalArgumentException(String.format(
+          "Offset must not be negative and limit must be between 1 and %d",
+          indexConfig.getMaxPageSize()));
+    }
+    final TableIndex.Page page =
+        tableIndex.find(databaseOf(orgUUID), offset, limit, userIdentity);
+    return new TableListResponse(orgUUID, offset, limit, page.getTotal(), page.isReconciled(),
+                                 page.getTables().stream().map(TableListResponse.Table::of)
+                                     .collect(Collectors.toList()));
+  }
+
   @ApiOperation(
       value = "Create Hive table",
       notes = "Privilege level: Consumer of this endpoint must be a member of specified organization"
   )
   @RequestMapping(value = "/rest/tables", method = POST)
   @ResponseStatus(value = CREATED)
-  public CreateTableResponse createTable(@RequestBody Metadata metadata) {
-    final HiveTable table = metadataMapper.apply(metadata);
-    hiveService.createTable(table, userIdentity);
+  public DeferredResult<CreateTableResponse> createTable(@RequestBody Metadata metadata) {
+    final HiveTable table = map(metadata, CREATE);
+    final JwtToken identity = detachedIdentity();
+    return onHiveExecutor(() -> publish(table, identity));
+  }
 
-    final String hueUrl = hue.isAvailable()
-                          ? String.join("/", hue.getUrl(), table.databaseName, table.tableName)
-                          : null;
-    final String arcadiaUrl = arcadia.isAvailable() ? arcadia.getUrl() : null;
-    return new CreateTableResponse(hueUrl, arcadiaUrl);
+  @ApiOperation(
+      value = "Create Hive table asynchronously",
+      notes = "Privilege level: Consumer of this endpoint must be a member of specified organization"
+  )
+  @RequestMapping(value = "/rest/tables", method = POST, params = "async=true")
+  public ResponseEntity<Job> createTableAsync(@RequestBody Metadata metadata) {
+    // validate request before it's queued
+    final HiveTable table = map(metadata, CREATE);
+    final JwtToken identity = detachedIdentity();
+    final Job job = jobService.submit(identity.getUserId(), () -> publish(table, identity));
+
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setLocation(URI.create("/rest/jobs/" + job.getId()));
+    return new ResponseEntity<>(job, headers, ACCEPTED);
+  }
+
+  @ApiOperation(
+      value = "Create many Hive tables",
+      notes = "Privilege level: Consumer of this endpoint must be a member of specified organizations"
+  )
+  @RequestMapping(value = "/rest/tables/batch", method = POST)
+  @ResponseStatus(value = OK)
+  public List<BatchItemResponse> createTables(@RequestBody List<Metadata> metadata) {
+    final BatchItemResponse[] responses = new BatchItemResponse[metadata.size()];
+    final List<HiveTable> tables = new ArrayList<>(metadata.size());
+    final List<Integer> indexes = new ArrayList<>(metadata.size());
+    for (int i = 0; i < metadata.size(); i++) {
+      try {
+        tables.add(map(metadata.get(i), CREATE));
+        indexes.add(i);
+      } catch (IllegalArgumentException | IllegalStateException e) {
+        responses[i] = BatchItemResponse.failed(i, e);
+      }
+    }
+
+    final List<Optional<Exception>> outcomes =
+        hiveService.createTables(tables, detachedIdentity());
+    for (int i = 0; i < tables.size(); i++) {
+      final int index = indexes.get(i);
+      final HiveTable table = tables.get(i);
+      responses[index] = outcomes.get(i)
+          .map(e -> BatchItemResponse.failed(index, e))
+          .orElseGet(() -> BatchItemResponse.created(index, links(table)));
+    }
+    return Arrays.asList(responses);
+  }
+
+  @ApiOperation(
+      value = "Create Hive tables from stream of newline delimited metadata",
+      notes = "Privilege level: Consumer of this endpoint must be a member of specified organizations"
+  )
+  @RequestMapping(value = "/rest/tables/stream", method = POST, consumes = NDJSON,
+      produces = NDJSON)
+  public void createTablesFromStream(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, InterruptedException {
+    final JwtToken identity = detachedIdentity();
+    final int maxInFlight = batchConfig.getMaxInFlight();
+    final Semaphore inFlight = new Semaphore(maxInFlight);
+
+    response.setStatus(OK.value());
+    response.setContentType(NDJSON);
+    final Writer writer = new OutputStreamWriter(response.getOutputStream(), UTF_8);
+    final Reader reader =
+        new BufferedReader(new InputStreamReader(request.getInputStream(), UTF_8));
+    final int maxLength = batchConfig.getMaxRecordLength();
+    String line;
+    int index = 0;
+    try {
+      while ((line = readRecord(reader, maxLength)) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        final int current = index++;
+        if (line.length() > maxLength) {
+          writeRecord(writer, BatchItemResponse.failed(current, new IllegalArgumentException(
+              "Record is longer than " + maxLength + " characters")));
+          continue;
+        }
+        final String record = line;
+        // stop reading the request until one of the records being processed is done
+        inFlight.acquire();
+        try {
+          CompletableFuture
+              .supplyAsync(() -> publishRecord(current, record, identity), batchExecutor)
+              .whenComplete((result, e) -> {
+                try {
+                  writeRecord(writer, result != null ? result : BatchItemResponse.failed(current,
+                      new IllegalStateException("Record wasn't processed", e)));
+                } finally {
+                  inFlight.release();
+                }
+              });
+        } catch (RejectedExecutionException e) {
+          // status is already sent, so the record is reported like any other failure
+          inFlight.release();
+          writeRecord(writer, BatchItemResponse.failed(current, e));
+        }
+      }
+    } finally {
+      // records being processed write to the response, which mustn't happen once it's handed back
+      inFlight.acquireUninterruptibly(maxInFlight);
+    }
+    writer.flush();
   }
 
   @ApiOperation(
@@ -77,8 +284,143 @@ public class HiveController {
   )
   @RequestMapping(value = "/rest/tables", method = DELETE)
   @ResponseStatus(value = OK)
-  public void dropTable(@RequestBody Metadata metadata) {
-    hiveService.dropTable(metadataMapper.apply(metadata), userIdentity);
+  public DeferredResult<Void> dropTable(@RequestBody Metadata metadata) {
+    final HiveTable table = map(metadata, DROP);
+    final JwtToken identity = detachedIdentity();
+    return onHiveExecutor(() -> {
+      hiveService.dropTable(table, identity);
+      return null;
+    });
+  }
+
+  @ApiOperation(
+      value = "Drop all Hive tables of organization",
+      notes = "Privilege level: Consumer of this endpoint must be a member of specified organization"
+  )
+  @RequestMapping(value = "/rest/orgs/{orgUUID}/tables", method = DELETE)
+  public ResponseEntity<Job> dropOrgTables(@PathVariable String orgUUID) {
+    final String database = databaseOf(orgUUID);
+    final JwtToken identity = detachedIdentity();
+    final TeardownProgress progress = new TeardownProgress(database);
+    final Job job = jobService.submit(identity.getUserId(), () -> {
+      hiveService.dropDatabase(database, identity, progress);
+      return progress;
+    }, progress);
+
+    final HttpHeaders headers = new HttpHeaders();
+    headers.setLocation(URI.create("/rest/jobs/" + job.getId()));
+    return new ResponseEntity<>(job, headers, ACCEPTED);
+  }
+
+  /**
+   * Runs work on the Hive executor, so that the servlet thread is released while it's pending.
+   * @param work work to run, must not use request scoped beans
+   * @return result of the work, set once it's done
+   * @throws RejectedExecutionException if too many requests are pending
+   */
+  private <T> DeferredResult<T> onHiveExecutor(Supplier<T> work) {
+    final DeferredResult<T> result = new DeferredResult<>(executionConfig.getTimeoutMillis());
+    CompletableFuture.supplyAsync(work, hiveExecutor).whenComplete((value, e) -> {
+      if (e == null) {
+        result.setResult(value);
+      } else {
+        // handled as if thrown by the controller
+        result.setErrorResult(e instanceof CompletionException ? e.getCause() : e);
+      }
+    });
+    return result;
+  }
+
+  private static String databaseOf(String orgUUID) {
+    if (!orgUUID.matches("[\\w-]+")) {
+      throw new IllegalArgumentException("Invalid organization id " + orgUUID);
+    }
+    return MetadataMapper.toValidDBName(orgUUID);
+  }
+
+  private HiveTable map(Metadata metadata, HiveMetrics.Operation operation) {
+    final long start = System.nanoTime();
+    // organization of the request becomes a tag only once it's mapped to a database
+    String org = HiveMetrics.UNKNOWN_ORG;
+    try {
+      final HiveTable table = metadataMapper.apply(metadata);
+      org = table.databaseName;
+      return table;
+    } finally {
+      metrics.record(HiveMetrics.Stage.MAPPING, operation, org, System.nanoTime() - start);
+    }
+  }
+
+  private CreateTableResponse publish(HiveTable table, JwtToken identity) {
+    hiveService.createTable(table, identity);
+    return links(table);
+  }
+
+  private BatchItemResponse publishRecord(int index, String record, JwtToken identity) {
+    try {
+      final HiveTable table = map(objectMapper.readValue(record, Metadata.class), CREATE);
+      return BatchItemResponse.created(index, publish(table, identity));
+    } catch (Exception e) {
+      return BatchItemResponse.failed(index, e);
+    }
+  }
+
+  /**
+   * Reads next line of the stream without its terminator, but no more than {@code maxLength} + 1
+   * characters of it; the rest of a longer line is skipped.
+   *
+   * @return the line, {@code null} at the end of the stream
+   */
+  private static String readRecord(Reader reader, int maxLength) throws IOException {
+    final StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = reader.read()) != -1 && c != '\n') {
+      if (line.length() <= maxLength) {
+        line.append((char) c);
+      }
+    }
+    if (c == -1 && line.length() == 0) {
+      return null;
+    }
+    final int last = line.length() - 1;
+    if (last >= 0 && line.charAt(last) == '\r') {
+      line.setLength(last);
+    }
+    return line.toString();
+  }
+
+  private void writeRecord(Writer writer, BatchItemResponse result) {
+    synchronized (writer) {
+      try {
+        writer.write(objectMapper.writeValueAsString(result));
+        writer.write('\n');
+        writer.flush();
+      } catch (IOException e) {
+        LOGGER.warn("Can't write result of record {}", result.getIndex(), e);
+      }
+    }
+  }
+
+  /**
+   * @return identity of the user which can be used outside of the request: the one resolved for
+   * the request itself, behind its scoped proxy
+   */
+  private JwtToken detachedIdentity() {
+    return userIdentity instanceof ScopedObject
+           ? (JwtToken) ((ScopedObject) userIdentity).getTargetObject()
+           : credentials.identityOf(userIdentity.getRawToken());
+  }
+
+  private CreateTableResponse links(HiveTable table) {
+    // point at columnar copy of the table once it's ready
+    final String tableName = columnarMaterializer.findReady(table)
+        .map(copy -> copy.tableName)
+        .orElse(table.tableName);
+    final String hueUrl = hue.isAvailable()
+                          ? String.join("/", hue.getUrl(), table.databaseName, tableName)
+                          : null;
+    final String arcadiaUrl = arcadia.isAvailable() ? arcadia.getUrl() : null;
+    return new CreateTableResponse(hueUrl, arcadiaUrl);
   }
 
   @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
@@ -87,6 +429,19 @@ public class HiveController {
     return e.getMessage();
   }
 
+  @ExceptionHandler(HiveUnavailableException.class)
+  public ResponseEntity<String> hiveUnavailableExceptionHandler(HiveUnavailableException e) {
+    final HttpHeaders headers = new HttpHeaders();
+    headers.set("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+    return new ResponseEntity<>(e.getMessage(), headers, SERVICE_UNAVAILABLE);
+  }
+
+  @ExceptionHandler(RejectedExecutionException.class)
+  @ResponseStatus(value = SERVICE_UNAVAILABLE)
+  public String serviceUnavailableExceptionHandler(RuntimeException e) {
+    return "Too many pending requests";
+  }
+
   public static final class Builder {
 
     private Config.Hue hueConfig;
@@ -97,8 +452,28 @@ public class HiveController {
 
     private HiveService hiveService;
 
+    private JobService jobService;
+
+    private ColumnarMaterializer columnarMaterializer;
+
+    private ExecutorService batchExecutor;
+
+    private Config.Batch batchConfig = new Config.Batch();
+
+    private ExecutorService hiveExecutor = MoreExecutors.newDirectExecutorService();
+
+    private Config.Execution executionConfig = new Config.Execution();
+
     private JwtToken userIdentity;
 
+    private UserCredentials credentials = new UserCredentials(new Config.Credentials());
+
+    private HiveMetrics metrics = new HiveMetrics();
+
+    private TableIndex tableIndex;
+
+    private Config.Index indexConfig = new Config.Index();
+
     private Builder() {
     }
 
@@ -126,6 +501,44 @@ public class HiveController {
       return this;
     }
 
+    public Builder withJobs(JobService jobService) {
+      this.jobService = jobService;
+      return this;
+    }
+
+    public Builder withColumnar(ColumnarMaterializer columnarMaterializer) {
+      this.columnarMaterializer = columnarMaterializer;
+      return this;
+    }
+
+    public Builder withBatchExecutor(ExecutorService executor, Config.Batch config) {
+      this.batchExecutor = executor;
+      this.batchConfig = config;
+      return this;
+    }
+
+    public Builder withHiveExecutor(ExecutorService executor, Config.Execution config) {
+      this.hiveExecutor = executor;
+      this.executionConfig = config;
+      return this;
+    }
+
+    public Builder withIndex(TableIndex tableIndex, Config.Index config) {
+      this.tableIndex = tableIndex;
+      this.indexConfig = config;
+      return this;
+    }
+
+    public Builder withMetrics(HiveMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public Builder withCredentials(UserCredentials credentials) {
+      this.credentials = credentials;
+      return this;
+    }
+
     public Builder asWho(JwtToken userIdentity) {
       this.userIdentity = userIdentity;
       return this;
@@ -135,9 +548,20 @@ public class HiveController {
       HiveController controller = new HiveController();
       controller.hue = this.hueConfig;
       controller.hiveService = this.hiveService;
+      controller.jobService = this.jobService;
+      controller.columnarMaterializer = this.columnarMaterializer;
+      controller.batchExecutor = this.batchExecutor;
+      controller.batchConfig = this.batchConfig;
+      controller.hiveExecutor = this.hiveExecutor;
+      controller.executionConfig = this.executionConfig;
+      controller.objectMapper = new ObjectMapper();
       controller.arcadia = this.arcadiaConfig;
       controller.userIdentity = this.userIdentity;
+      controller.credentials = this.credentials;
       controller.metadataMapper = this.metadataMapper;
+      controller.metrics = this.metrics;
+      controller.tableIndex = this.tableIndex;
+      controller.indexConfig = this.indexConfig;
       return controller;
     }
   }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.trustedanalytics.datasetpublisher.service.Job;
+import org.trustedanalytics.datasetpublisher.service.JobService;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import io.swagger.annotations.ApiOperation;
+
+@RestController
+public class JobController {
+
+  private final JobService jobService;
+  private final JwtToken userIdentity;
+
+  @Autowired
+  public JobController(JobService jobService, JwtToken userIdentity) {
+    this.jobService = jobService;
+    this.userIdentity = userIdentity;
+  }
+
+  @ApiOperation(
+      value = "Get status of asynchronous job",
+      notes = "Privilege level: Consumer of this endpoint must have submitted the job"
+  )
+  @RequestMapping(value = "/rest/jobs/{id}", method = GET)
+  public ResponseEntity<Job> getJob(@PathVariable String id) {
+    // jobs of other users are reported as unknown, so that their ids can't be probed
+    return jobService.find(id, userIdentity.getUserId())
+        .map(job -> new ResponseEntity<>(job, OK))
+        .orElse(new ResponseEntity<>(NOT_FOUND));
+  }
+
+  @ApiOperation(
+      value = "Cancel asynchronous job",
+      notes = "Privilege level: Consumer of this endpoint must have submitted the job"
+  )
+  @RequestMapping(value = "/rest/jobs/{id}", method = DELETE)
+  public ResponseEntity<Job> cancelJob(@PathVariable String id) {
+    return jobService.cancel(id, userIdentity.getUserId())
+        .map(job -> new ResponseEntity<>(job, OK))
+        .orElse(new ResponseEntity<>(NOT_FOUND));
+  }
+}
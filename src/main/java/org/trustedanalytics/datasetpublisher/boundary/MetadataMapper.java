@@ -18,13 +18,19 @@ package org.trustedanalytics.datasetpublisher.boundary;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+import org.trustedanalytics.datasetpublisher.service.FormatDetector;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -38,15 +44,25 @@ public class MetadataMapper implements Function<Metadata, HiveTable> {
 
     public static final int IDENTIFIER_MAX_LEN = 64;
     private final Set<String> restrictedKeywords;
+    private final Config.Header header;
+    private final Config.Format format;
 
-    @Autowired
     public MetadataMapper(Supplier<Set<String>> restrictedKeywords) {
+        this(restrictedKeywords, new Config.Header(), new Config.Format());
+    }
+
+    @Autowired
+    public MetadataMapper(Supplier<Set<String>> restrictedKeywords, Config.Header header,
+                          Config.Format format) {
         this.restrictedKeywords = restrictedKeywords.get();
+        this.header = header;
+        this.format = format;
     }
 
     @Override
     public HiveTable apply(Metadata metadata) {
-        final List<String> fields = Arrays.asList(metadata.getDataSample().split(","));
+        final char delimiter = delimiterOf(metadata);
+        final List<String> fields = readHeader(metadata, delimiter);
         // validate if initial names of header fields are distinct
         checkDuplicates(fields, "Duplicated header fields in file");
 
@@ -59,7 +75,41 @@ public class MetadataMapper implements Function<Metadata, HiveTable> {
 
         // validate if names of fields transformed into name columns are distinct
         checkDuplicates(columns, "Duplicated columns in table");
-        return new HiveTable(dbName, tableName, columns, location);
+        final HiveTable table =
+            new HiveTable(dbName, tableName, columns, location, metadata.getTargetUri());
+        return delimiter == table.format.delimiter
+               ? table
+               : table.withFormat(new TextFormat(delimiter, table.format.header, null));
+    }
+
+    /**
+     * Rows are split with comma unless format detection is enabled, so is the header.
+     */
+    private char delimiterOf(Metadata metadata) {
+        return format.isEnabled() && metadata.getDataSample() != null
+               ? FormatDetector.delimiterOf(metadata.getDataSample())
+               : TextFormat.DEFAULT.delimiter;
+    }
+
+    /**
+     * Reads header from data sample. The published file itself is never read here, it's
+     * reachable by the service account rather than by the user who publishes it.
+     * @param metadata dataset metadata
+     * @param delimiter delimiter of rows of the table
+     * @return header fields
+     */
+    private List<String> readHeader(Metadata metadata, char delimiter) {
+        final String sample = metadata.getDataSample();
+        if (sample == null) {
+            throw new IllegalArgumentException("Data sample is missing");
+        }
+        try (StringReader reader = new StringReader(sample)) {
+            return HeaderTokenizer.read(reader, delimiter, header.getMaxColumns(),
+                                        header.getMaxLength());
+        } catch (IOException e) {
+            // string reader doesn't fail
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -68,22 +118,64 @@ public class MetadataMapper implements Function<Metadata, HiveTable> {
      * @return valid name
      */
     private String toValidTableName(String string) {
-        final Function<String, String> lowercase = String::toLowerCase;
+        final String name = isAscii(string) ? toValidAsciiName(string) : toValidUnicodeName(string);
+        // add underscore after name that is Impala reserved word
+        final String valid = isValidKeyword(name) ? name : name + "_";
+        // limit identifier length
+        return StringUtils.left(valid, IDENTIFIER_MAX_LEN);
+    }
 
-        return lowercase
-            // prefix must be a letter
-            .andThen(s -> s.matches("^[a-zA-Z].*") ? s : "x" + s)
+    /**
+     * Lowercases name, prefixes it if it doesn't start with a letter and replaces non
+     * alphanumeric characters, all in a single pass over the name.
+     */
+    private static String toValidAsciiName(String string) {
+        final int length = string.length();
+        // prefix must be a letter, name with line breaks doesn't match ^[a-zA-Z].* either
+        final boolean prefixed = length == 0 || !isAsciiLetter(string.charAt(0))
+            || string.indexOf('\n') >= 0 || string.indexOf('\r') >= 0;
+        final int offset = prefixed ? 1 : 0;
+        final char[] name = new char[length + offset];
+        if (prefixed) {
+            name[0] = 'x';
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = string.charAt(i);
+            final char lower = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
             // replace non alphanumeric characters
-            .andThen(s -> s.replaceAll("\\W", "_"))
-            // add underscore after name that is Impala reserved word
-            .andThen(s -> isValidKeyword(s) ? s : s + "_")
-            // limit identifier length
-            .andThen(s -> StringUtils.left(s, IDENTIFIER_MAX_LEN))
-            // apply initial name
-            .apply(string);
+            name[i + offset] = isWordChar(lower) ? lower : '_';
+        }
+        return new String(name);
+    }
+
+    /**
+     * Same as {@link #toValidAsciiName(String)}, for names where lowercasing may change length
+     * and characters outside of BMP must be replaced as a whole.
+     */
+    private static String toValidUnicodeName(String string) {
+        final String lowercase = string.toLowerCase();
+        final String prefixed = lowercase.matches("^[a-zA-Z].*") ? lowercase : "x" + lowercase;
+        return prefixed.replaceAll("\\W", "_");
+    }
+
+    private static boolean isAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_';
     }
 
-    private String toValidDBName(String string) {
+    static String toValidDBName(String string) {
       return string.replace('-', '_');
     }
 
@@ -97,16 +189,19 @@ public class MetadataMapper implements Function<Metadata, HiveTable> {
     }
 
     private void checkDuplicates(List<String> strings, String exceptionMessagePrefix) {
-        strings.stream()
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
-                .entrySet()
-                .stream()
-                .filter(group -> group.getValue() > 1)
-                .map(Map.Entry::getKey)
-                .sorted()
-                .reduce((acc, column) -> acc + ", " + column)
-                .ifPresent(duplicates -> {
-                    throw new IllegalStateException(exceptionMessagePrefix + ": " + duplicates);
-                });
+        final Set<String> seen = new HashSet<>(strings.size() * 2);
+        Set<String> duplicates = null;
+        for (String string : strings) {
+            if (!seen.add(string)) {
+                if (duplicates == null) {
+                    duplicates = new TreeSet<>();
+                }
+                duplicates.add(string);
+            }
+        }
+        if (duplicates != null) {
+            throw new IllegalStateException(
+                exceptionMessagePrefix + ": " + String.join(", ", duplicates));
+        }
     }
 }
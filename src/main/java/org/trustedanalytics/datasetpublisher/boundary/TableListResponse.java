@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Page of tables published to the organization database.
+ */
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+public class TableListResponse {
+
+  private final String org;
+
+  private final int offset;
+
+  private final int limit;
+
+  private final int total;
+
+  /**
+   * Whether the listing has been reconciled with the metastore at least once.
+   */
+  private final boolean reconciled;
+
+  private final List<Table> tables;
+
+  /**
+   * Published table. Tables which were created outside of the service are known by name only.
+   */
+  @AllArgsConstructor
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  @Getter
+  public static class Table {
+
+    private final String name;
+
+    private final String location;
+
+    @JsonProperty("source_uri")
+    private final String sourceUri;
+
+    private final List<String> columns;
+
+    public static Table of(HiveTable table) {
+      return new Table(table.tableName, table.location, table.sourceUri,
+                       table.columns.isEmpty() ? null : table.columns.stream()
+                           .map(column -> column.name)
+                           .collect(Collectors.toList()));
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.entity;
+
+import java.util.Objects;
+
+/**
+ * Column of a Hive table.
+ */
+public class Column {
+
+    public static final String STRING = "string";
+
+    public final String name;
+    public final String type;
+
+    public Column(String name, String type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    public static Column string(String name) {
+        return new Column(name, STRING);
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Column)) {
+            return false;
+        }
+        final Column other = (Column) o;
+        return Objects.equals(name, other.name) && Objects.equals(type, other.type);
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(name, type);
+    }
+
+    @Override public String toString() {
+        return name + " " + type;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.entity;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Managed columnar copy of a published table, materialized from its text files. Copies are
+ * tagged with their source table, so that tables which aren't copies made by the service are
+ * never taken for them.
+ */
+public class ColumnarCopy {
+
+    /**
+     * Table property holding fully qualified name of the source table.
+     */
+    public static final String SOURCE_PROPERTY = "dataset_publisher.source";
+
+    public enum Format {
+        PARQUET("parquet", "parquet.compression"),
+        ORC("orc", "orc.compress");
+
+        public final String storedAs;
+        public final String compressionProperty;
+
+        Format(String storedAs, String compressionProperty) {
+            this.storedAs = storedAs;
+            this.compressionProperty = compressionProperty;
+        }
+    }
+
+    public enum Status {
+        PENDING, READY, FAILED
+    }
+
+    public final String databaseName;
+    public final String tableName;
+    public final String source;
+    public final Format format;
+    public final HiveTable.Signature sourceSignature;
+    private volatile Status status = Status.PENDING;
+
+    /**
+     * @param source fully qualified name of the source table
+     */
+    public ColumnarCopy(String databaseName, String tableName, String source, Format format,
+                        HiveTable.Signature sourceSignature) {
+        this.databaseName = databaseName;
+        this.tableName = tableName;
+        this.source = source;
+        this.format = format;
+        this.sourceSignature = sourceSignature;
+    }
+
+    public String getFullyQualifiedName() {
+        return String.join(".", databaseName, tableName);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    @Override public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("databaseName", databaseName)
+            .add("tableName", tableName)
+            .add("source", source)
+            .add("format", format)
+            .add("status", status)
+            .toString();
+    }
+}
@@ -19,31 +19,134 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 public class HiveTable {
 
     public final String databaseName;
     public final String tableName;
     public final List<String> fields;
+    public final List<Column> columns;
     public final String location;
+    public final String sourceUri;
+    public final List<Column> partitionColumns;
+    public final List<Partition> partitions;
+    public final TextFormat format;
 
     public HiveTable(String databaseName, String tableName, List<String> fields, String location) {
+        this(databaseName, tableName, fields, location, null);
+    }
+
+    /**
+     * @param sourceUri uri of the published file, used to learn more about the data
+     */
+    public HiveTable(String databaseName, String tableName, List<String> fields, String location,
+                     String sourceUri) {
+        this(databaseName, tableName, location, sourceUri,
+            fields.stream().map(Column::string).collect(Collectors.toList()),
+            ImmutableList.of(), ImmutableList.of(), TextFormat.DEFAULT);
+    }
+
+    private HiveTable(String databaseName, String tableName, String location, String sourceUri,
+                      List<Column> columns, List<Column> partitionColumns,
+                      List<Partition> partitions, TextFormat format) {
         this.databaseName = databaseName;
         this.tableName = tableName;
-        this.fields = ImmutableList.copyOf(fields);
+        this.columns = ImmutableList.copyOf(columns);
+        this.fields = ImmutableList.copyOf(
+            columns.stream().map(column -> column.name).collect(Collectors.toList()));
         this.location = location;
+        this.sourceUri = sourceUri;
+        this.partitionColumns = ImmutableList.copyOf(partitionColumns);
+        this.partitions = ImmutableList.copyOf(partitions);
+        this.format = format;
+    }
+
+    /**
+     * @param columns typed columns, e.g. inferred from the data
+     * @return copy of the table with given columns
+     */
+    public HiveTable withColumns(List<Column> columns) {
+        return new HiveTable(databaseName, tableName, location, sourceUri, columns,
+            partitionColumns, partitions, format);
+    }
+
+    /**
+     * @param location root directory of partitions
+     * @param partitionColumns partition columns
+     * @param partitions partitions found under the root directory
+     * @return copy of the table partitioned as given
+     */
+    public HiveTable withPartitions(String location, List<Column> partitionColumns,
+                                    List<Partition> partitions) {
+        return new HiveTable(databaseName, tableName, location, sourceUri, columns,
+            partitionColumns, partitions, format);
+    }
+
+    /**
+     * @param format layout of the files, e.g. detected from their content
+     * @return copy of the table with given format
+     */
+    public HiveTable withFormat(TextFormat format) {
+        return new HiveTable(databaseName, tableName, location, sourceUri, columns,
+            partitionColumns, partitions, format);
     }
 
     public String getFullyQualifiedName() {
         return String.join(".", databaseName, tableName);
     }
 
+    /**
+     * @return definition of the table, i.e. its columns, location and format
+     */
+    public Signature getSignature() {
+        return new Signature(fields, location, format);
+    }
+
     @Override public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("databaseName", databaseName)
             .add("tableName", tableName)
-            .add("fields", fields)
+            .add("columns", columns)
             .add("location", location)
+            .add("sourceUri", sourceUri)
+            .add("partitionColumns", partitionColumns)
+            .add("partitions", partitions.size())
+            .add("format", format)
             .toString();
     }
+
+    /**
+     * Definition of a table, telling whether two tables are the same one. It compares the
+     * definitions themselves rather than their hashes, which may collide.
+     */
+    public static final class Signature {
+
+        private final List<String> fields;
+        private final String location;
+        private final TextFormat format;
+
+        private Signature(List<String> fields, String location, TextFormat format) {
+            this.fields = fields;
+            this.location = location;
+            this.format = format;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            final Signature other = (Signature) o;
+            return fields.equals(other.fields) && Objects.equals(location, other.location)
+                && Objects.equals(format, other.format);
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(fields, location, format);
+        }
+    }
 }
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.entity;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Layout of delimited text files of a Hive table.
+ */
+public class TextFormat {
+
+    /**
+     * Delimiters recognized in published files, in order of preference.
+     */
+    public static final List<Character> DELIMITERS = ImmutableList.of(',', '\t', '|', ';');
+
+    /**
+     * Comma separated values, with header read as data.
+     */
+    public static final TextFormat DEFAULT = new TextFormat(',', false, null);
+
+    public final char delimiter;
+    public final boolean header;
+    /**
+     * Compression codec of files, e.g. gzip, or null if they aren't compressed.
+     */
+    public final String codec;
+
+    public TextFormat(char delimiter, boolean header, String codec) {
+        this.delimiter = delimiter;
+        this.header = header;
+        this.codec = codec;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TextFormat)) {
+            return false;
+        }
+        final TextFormat other = (TextFormat) o;
+        return delimiter == other.delimiter && header == other.header
+            && Objects.equals(codec, other.codec);
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(delimiter, header, codec);
+    }
+
+    @Override public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("delimiter", delimiter)
+            .add("header", header)
+            .add("codec", codec)
+            .toString();
+    }
+}
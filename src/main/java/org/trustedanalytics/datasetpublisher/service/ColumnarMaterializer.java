@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.ColumnarCopy;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.COLUMNAR;
+import static org.trustedanalytics.datasetpublisher.service.HiveSessions.execute;
+
+/**
+ * Materializes managed columnar copies of published text tables in the background and tracks
+ * their state next to the source tables. Copies are tagged with their source table, and tables
+ * which don't carry the tag of the source are neither used as its copy nor dropped.
+ */
+@Component
+public class ColumnarMaterializer implements HiveTableListener, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ColumnarMaterializer.class);
+  private static final int IDENTIFIER_MAX_LEN = 64;
+  private final QueryBuilder queryBuilder;
+  private final HiveSessions sessions;
+  private final Config.Columnar config;
+  private final ExecutorService executor;
+  private final ConcurrentMap<String, ColumnarCopy> copies = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ColumnarMaterializer(QueryBuilder queryBuilder, HiveSessions sessions,
+                              Config.Columnar config) {
+    this(queryBuilder, sessions, config, Executors.newFixedThreadPool(config.getThreads(),
+        new ThreadFactoryBuilder().setNameFormat("columnar-%d").setDaemon(true).build()));
+  }
+
+  ColumnarMaterializer(QueryBuilder queryBuilder, HiveSessions sessions, Config.Columnar config,
+                       ExecutorService executor) {
+    this.queryBuilder = queryBuilder;
+    this.sessions = sessions;
+    this.config = config;
+    this.executor = executor;
+  }
+
+  /**
+   * Finds columnar copy of the table which is ready to be queried.
+   * @param table hive table
+   * @return columnar copy, empty if there's none or it's not ready yet
+   */
+  public Optional<ColumnarCopy> findReady(HiveTable table) {
+    return Optional.ofNullable(copies.get(table.getFullyQualifiedName()))
+        .filter(copy -> copy.getStatus() == ColumnarCopy.Status.READY);
+  }
+
+  @Override
+  public void tableCreated(HiveTable table, JwtToken userIdentity) {
+    final ColumnarCopy.Format format = config.getFormat();
+    if (format == null) {
+      return;
+    }
+    final ColumnarCopy copy = copyOf(table, format);
+    final ColumnarCopy previous = copies.put(table.getFullyQualifiedName(), copy);
+    if (previous != null && previous.sourceSignature.equals(copy.sourceSignature)
+        && previous.getStatus() != ColumnarCopy.Status.FAILED) {
+      // copy of unchanged table is already there or on its way
+      copies.replace(table.getFullyQualifiedName(), copy, previous);
+      return;
+    }
+    final JwtToken identity = JwtTokens.snapshot(userIdentity);
+    executor.submit(() -> materialize(table, copy, identity));
+  }
+
+  /**
+   * Drops copy of the table, if there's one made by the service. Copy which isn't tracked, e.g.
+   * made before restart, is recognized by its tag.
+   */
+  @Override
+  public void tableDropped(HiveTable table, JwtToken userIdentity) {
+    final ColumnarCopy copy = copies.remove(table.getFullyQualifiedName());
+    final ColumnarCopy.Format format = copy != null ? copy.format : config.getFormat();
+    if (format != null) {
+      final ColumnarCopy dropped = copy != null ? copy : copyOf(table, format);
+      sessions.run(userIdentity, COLUMNAR, table.databaseName, stm -> dropIfOwned(stm, dropped));
+    }
+  }
+
+  @Override
+  public void databaseDropped(String databaseName, JwtToken userIdentity) {
+    // copies live in the database of their table, so they are gone as well
+    copies.values().removeIf(copy -> copy.databaseName.equals(databaseName));
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  private void materialize(HiveTable table, ColumnarCopy copy, JwtToken identity) {
+    try {
+      sessions.run(identity, COLUMNAR, table.databaseName, stm -> {
+        // copy made earlier may be of previous definition of the table, it's made again
+        dropIfOwned(stm, copy);
+        execute(stm, queryBuilder.createColumnarCopy(table, copy, config.getCompression()));
+        // create if not exists keeps table which has taken the name in the meantime
+        final Optional<String> source = sourceOf(stm, copy);
+        if (!source.equals(Optional.of(copy.source))) {
+          throw new SQLException(String.format("Table %s exists and isn't a copy of %s",
+                                               copy.getFullyQualifiedName(), copy.source));
+        }
+      });
+      copy.setStatus(ColumnarCopy.Status.READY);
+      LOGGER.info("Columnar copy {} is ready", copy.getFullyQualifiedName());
+    } catch (RuntimeException e) {
+      LOGGER.error(String.format("Can't materialize %s", copy.getFullyQualifiedName()), e);
+      copy.setStatus(ColumnarCopy.Status.FAILED);
+    }
+    if (!copies.containsKey(table.getFullyQualifiedName())) {
+      // source table has been dropped while the copy was being made
+      try {
+        sessions.run(identity, COLUMNAR, table.databaseName, stm -> dropIfOwned(stm, copy));
+      } catch (RuntimeException e) {
+        LOGGER.error(String.format("Can't drop %s", copy.getFullyQualifiedName()), e);
+      }
+    }
+  }
+
+  private void dropIfOwned(Statement stm, ColumnarCopy copy) throws SQLException {
+    final Optional<String> source = sourceOf(stm, copy);
+    if (source.equals(Optional.of(copy.source))) {
+      execute(stm, queryBuilder.dropColumnarCopy(copy));
+    } else if (source.isPresent()) {
+      LOGGER.warn("Table {} isn't a copy of {}, it's left as it is",
+                  copy.getFullyQualifiedName(), copy.source);
+    }
+  }
+
+  /**
+   * @return source table which the copy is tagged with, empty if the copy doesn't exist, or
+   * whatever Hive tells for table without the tag
+   */
+  private Optional<String> sourceOf(Statement stm, ColumnarCopy copy) throws SQLException {
+    try (ResultSet rs = stm.executeQuery(queryBuilder.showColumnarCopy(copy))) {
+      if (!rs.next()) {
+        return Optional.empty();
+      }
+    }
+    try (ResultSet rs = stm.executeQuery(queryBuilder.showColumnarCopySource(copy))) {
+      return Optional.of(rs.next() ? Strings.nullToEmpty(rs.getString(1)).trim() : "");
+    }
+  }
+
+  /**
+   * Names are made unique by hash of the source table, so that truncated names of different
+   * tables don't meet. Name may still be taken by a published table, which is told by the tag.
+   */
+  static ColumnarCopy copyOf(HiveTable table, ColumnarCopy.Format format) {
+    final String suffix = String.format("_%08x_%s",
+                                        table.getFullyQualifiedName().hashCode(), format.storedAs);
+    final String name =
+        StringUtils.left(table.tableName, IDENTIFIER_MAX_LEN - suffix.length()) + suffix;
+    return new ColumnarCopy(table.databaseName, name, table.getFullyQualifiedName(), format,
+                            table.getSignature());
+  }
+}
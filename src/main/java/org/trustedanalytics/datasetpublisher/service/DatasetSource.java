@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Read access to published datasets. Uris come from users, so they're accessed on behalf of the
+ * user and only within the directory of the organization owning the dataset.
+ */
+public interface DatasetSource {
+
+  /**
+   * Opens dataset file, decompressed with the codec matching its extension if there's one,
+   * the same way Hive reads it.
+   * @param uri uri of the file
+   * @param databaseName database of the organization owning the dataset
+   * @param userIdentity user on behalf of whom the file is read
+   * @return content of the file
+   * @throws IOException if the file can't be read, also if it's outside of the directory
+   *                     of the organization
+   */
+  InputStream open(String uri, String databaseName, JwtToken userIdentity) throws IOException;
+
+  /**
+   * Lists subdirectories of the directory.
+   * @param uri uri of the directory
+   * @param databaseName database of the organization owning the dataset
+   * @param userIdentity user on behalf of whom the directory is listed
+   * @return uris of subdirectories
+   * @throws IOException if the directory can't be listed, also if it's outside of the
+   *                     directory of the organization
+   */
+  List<String> listDirectories(String uri, String databaseName, JwtToken userIdentity)
+      throws IOException;
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Detects layout of the published file from its first characters: whether the first record is a
+ * header, and the compression codec, by extension as Hadoop picks it. Codecs which can't be split
+ * make a single task read the whole file, which is logged as a warning.
+ *
+ * The delimiter is picked by {@link #delimiterOf(String)} from the data sample when the request
+ * is mapped, as columns are split with it, and it's kept as it is here, so that the table and its
+ * columns never disagree.
+ */
+@Component
+@Order(FormatDetector.ORDER)
+public class FormatDetector implements TableEnricher {
+
+  public static final int ORDER = 150;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FormatDetector.class);
+
+  private static final Map<String, String> CODECS = ImmutableMap.of(
+      ".gz", "gzip",
+      ".bz2", "bzip2",
+      ".snappy", "snappy",
+      ".deflate", "deflate");
+  private static final Set<String> SPLITTABLE = ImmutableSet.of("bzip2");
+
+  private static final Pattern NUMBER =
+      Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+  private static final char GZIP_MAGIC = 0x1f;
+  private static final String BZIP2_MAGIC = "BZh";
+
+  private final DatasetSource datasetSource;
+  private final Config.Format config;
+
+  @Autowired
+  public FormatDetector(DatasetSource datasetSource, Config.Format config) {
+    this.datasetSource = datasetSource;
+    this.config = config;
+  }
+
+  @Override
+  public HiveTable enrich(HiveTable table, JwtToken userIdentity) {
+    if (!config.isEnabled() || table.sourceUri == null) {
+      return table;
+    }
+    final String codec = codecOf(table.sourceUri);
+    if (codec != null && !SPLITTABLE.contains(codec)) {
+      LOGGER.warn("{} is compressed with {}, which can't be split, it's read by a single task",
+                  table.sourceUri, codec);
+    }
+    final String sample;
+    final boolean complete;
+    try (InputStream in =
+             datasetSource.open(table.sourceUri, table.databaseName, userIdentity);
+         Reader reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+      final char[] buffer = new char[config.getSampleChars()];
+      int length = 0;
+      int read = 0;
+      while (length < buffer.length
+             && (read = reader.read(buffer, length, buffer.length - length)) != -1) {
+        length += read;
+      }
+      sample = new String(buffer, 0, length);
+      complete = read == -1 || reader.read() == -1;
+    } catch (IOException e) {
+      LOGGER.warn(String.format("Can't read %s, format is left as it is", table.sourceUri), e);
+      return table;
+    }
+    if (codec == null && (sample.indexOf(GZIP_MAGIC) == 0 || sample.startsWith(BZIP2_MAGIC))) {
+      LOGGER.warn("{} looks compressed but has no extension of a codec, it's read as plain text",
+                  table.sourceUri);
+    }
+
+    final List<String> records = records(sample, complete);
+    final char delimiter = table.format.delimiter;
+    final TextFormat format = new TextFormat(delimiter, hasHeader(records, delimiter), codec);
+    final int columns = records.isEmpty() ? 0 : fields(records.get(0), delimiter).size();
+    if (columns != table.columns.size()) {
+      LOGGER.warn("{} has {} fields separated by '{}', table {} has {} columns",
+                  table.sourceUri, columns, delimiter, table.getFullyQualifiedName(),
+                  table.columns.size());
+    }
+    LOGGER.debug("Detected format of {}: {}", table.getFullyQualifiedName(), format);
+    return table.withFormat(format);
+  }
+
+  /**
+   * Picks delimiter of delimited text, as the one of {@link TextFormat#DELIMITERS} occurring the
+   * same number of times in most records.
+   * @param sample first records of the text, e.g. data sample of the dataset
+   * @return delimiter, comma if there are none
+   */
+  public static char delimiterOf(String sample) {
+    return delimiterOf(records(sample, true));
+  }
+
+  private static String codecOf(String uri) {
+    return CODECS.entrySet().stream()
+        .filter(codec -> uri.endsWith(codec.getKey()))
+        .map(Map.Entry::getValue)
+        .findFirst()
+        .orElse(null);
+  }
+
+  /**
+   * Splits sample into records, line breaks inside double quotes don't end them. The last
+   * record is dropped if the sample is cut in the middle of it.
+   */
+  private static List<String> records(String sample, boolean complete) {
+    final List<String> records = new ArrayList<>();
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < sample.length(); i++) {
+      final char c = sample.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (!quoted && (c == '\n' || c == '\r')) {
+        if (i > start) {
+          records.add(sample.substring(start, i));
+        }
+        start = i + 1;
+      }
+    }
+    if (complete && start < sample.length()) {
+      records.add(sample.substring(start));
+    }
+    return records;
+  }
+
+  /**
+   * Picks the delimiter found the same number of times as in the first record in most records,
+   * then the one found more often, then the one preferred. Comma if there are none.
+   */
+  private static char delimiterOf(List<String> records) {
+    char best = TextFormat.DEFAULT.delimiter;
+    int bestMatching = 0;
+    int bestCount = 0;
+    for (char delimiter : TextFormat.DELIMITERS) {
+      final int count = records.isEmpty() ? 0 : count(records.get(0), delimiter);
+      if (count == 0) {
+        continue;
+      }
+      final int matching = (int) records.stream()
+          .filter(record -> count(record, delimiter) == count)
+          .count();
+      if (matching > bestMatching || (matching == bestMatching && count > bestCount)) {
+        best = delimiter;
+        bestMatching = matching;
+        bestCount = count;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Each column votes: the first record is a header if its value isn't a number while all
+   * values below are, or if its length differs from the same length of all values below, and
+   * it's not if the opposite is true. The first record is taken as header unless most columns
+   * vote against it, published files are expected to have one.
+   */
+  private static boolean hasHeader(List<String> records, char delimiter) {
+    if (records.size() < 2) {
+      return !records.isEmpty();
+    }
+    final List<String> first = fields(records.get(0), delimiter);
+    final List<List<String>> rows = new ArrayList<>(records.size() - 1);
+    for (String record : records.subList(1, records.size())) {
+      rows.add(fields(record, delimiter));
+    }
+    int votes = 0;
+    for (int column = 0; column < first.size(); column++) {
+      final String name = first.get(column);
+      boolean numbers = true;
+      int length = -1;
+      boolean sameLength = true;
+      boolean any = false;
+      for (List<String> row : rows) {
+        if (column >= row.size() || row.get(column).isEmpty()) {
+          continue;
+        }
+        final String value = row.get(column);
+        any = true;
+        numbers &= NUMBER.matcher(value).matches();
+        sameLength &= length == -1 || length == value.length();
+        length = value.length();
+      }
+      if (!any) {
+        continue;
+      }
+      if (numbers) {
+        votes += NUMBER.matcher(name).matches() ? -1 : 1;
+      } else if (sameLength) {
+        votes += name.length() == length ? -1 : 1;
+      }
+    }
+    return votes >= 0;
+  }
+
+  private static int count(String record, char delimiter) {
+    int count = 0;
+    boolean quoted = false;
+    for (int i = 0; i < record.length(); i++) {
+      final char c = record.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == delimiter && !quoted) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static List<String> fields(String record, char delimiter) {
+    final List<String> fields = new ArrayList<>();
+    final StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < record.length(); i++) {
+      final char c = record.charAt(i);
+      if (c == '"') {
+        // doubled quote inside quotes is the quote itself
+        if (quoted && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+          field.append(c);
+          i++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == delimiter && !quoted) {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+}
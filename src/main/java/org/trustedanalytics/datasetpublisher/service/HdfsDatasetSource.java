@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reads datasets from HDFS as a proxy of the user, so that HDFS checks permissions of the user
+ * rather than of the service. Service principal must be allowed to impersonate users
+ * (hadoop.proxyuser.*). Only hdfs uris under the directory of the organization are accepted.
+ */
+@Component
+public class HdfsDatasetSource implements DatasetSource {
+
+  private static final String SCHEME = "hdfs";
+
+  private final Configuration configuration = new Configuration();
+  private final CompressionCodecFactory codecs = new CompressionCodecFactory(configuration);
+  private final Config.Datasets config;
+
+  @Autowired
+  public HdfsDatasetSource(Config.Datasets config) {
+    this.config = config;
+  }
+
+  @Override
+  public InputStream open(String uri, String databaseName, JwtToken userIdentity)
+      throws IOException {
+    final Path path = new Path(checkAllowed(uri, databaseName, config.getRoot()));
+    final FileSystem fs = asUser(userIdentity, () -> FileSystem.newInstance(path.toUri(),
+                                                                            configuration));
+    final InputStream in;
+    try {
+      in = decompressed(path, fs.open(path));
+    } catch (IOException | RuntimeException e) {
+      fs.close();
+      throw e;
+    }
+    // file system is of this read only, it's not shared through the cache of Hadoop
+    return new FilterInputStream(in) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          fs.close();
+        }
+      }
+    };
+  }
+
+  @Override
+  public List<String> listDirectories(String uri, String databaseName, JwtToken userIdentity)
+      throws IOException {
+    final Path path = new Path(checkAllowed(uri, databaseName, config.getRoot()));
+    try (FileSystem fs = asUser(userIdentity, () -> FileSystem.newInstance(path.toUri(),
+                                                                           configuration))) {
+      return Arrays.stream(fs.listStatus(path))
+          .filter(FileStatus::isDirectory)
+          .map(status -> status.getPath().toString())
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * @param uri uri given by user
+   * @param databaseName database of the organization
+   * @param root directory holding directories of organizations
+   * @return normalized uri
+   * @throws AccessControlException if uri isn't an hdfs uri within directory of the organization
+   */
+  static URI checkAllowed(String uri, String databaseName, String root)
+      throws AccessControlException {
+    final URI normalized;
+    try {
+      normalized = new URI(uri).normalize();
+    } catch (URISyntaxException e) {
+      throw new AccessControlException("Invalid dataset uri " + uri);
+    }
+    if (!SCHEME.equalsIgnoreCase(normalized.getScheme()) || normalized.getPath() == null) {
+      throw new AccessControlException("Only hdfs datasets can be read, not " + uri);
+    }
+    final String prefix = root.endsWith("/") ? root : root + "/";
+    final String path = normalized.getPath();
+    if (!path.startsWith(prefix) || Arrays.asList(path.split("/")).contains("..")) {
+      throw new AccessControlException(uri + " is outside of organization directories");
+    }
+    // directory of the organization is named with its id, which the database name is made of
+    final String org = path.substring(prefix.length()).split("/", 2)[0];
+    if (!org.replace('-', '_').equals(databaseName)) {
+      throw new AccessControlException(uri + " is outside of directory of " + databaseName);
+    }
+    return normalized;
+  }
+
+  private InputStream decompressed(Path path, InputStream in) throws IOException {
+    final CompressionCodec codec = codecs.getCodec(path);
+    if (codec == null) {
+      return in;
+    }
+    try {
+      return codec.createInputStream(in);
+    } catch (IOException | RuntimeException e) {
+      // e.g. native library of the codec isn't loaded
+      in.close();
+      throw new IOException(String.format("Can't decompress %s", path), e);
+    }
+  }
+
+  private static <T> T asUser(JwtToken userIdentity, PrivilegedExceptionAction<T> action)
+      throws IOException {
+    final UserGroupInformation user = UserGroupInformation.createProxyUser(
+        userIdentity.getUserId(), UserGroupInformation.getLoginUser());
+    try {
+      return user.doAs(action);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while accessing dataset");
+    }
+  }
+}
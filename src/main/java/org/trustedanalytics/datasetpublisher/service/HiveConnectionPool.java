@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.base.Strings;
+
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.hadoop.config.client.helper.Hive;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.util.Objects;
+
+import javax.security.auth.login.LoginException;
+
+/**
+ * Pool of HiveServer2 connections kept per user identity, so that consecutive queries of the
+ * same user don't pay for login and session handshake again.
+ *
+ * Connections are validated on borrow and retired before the token they were opened with
+ * expires.
+ */
+@Component
+public class HiveConnectionPool implements DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HiveConnectionPool.class);
+  private final GenericKeyedObjectPool<Identity, PooledHiveConnection> pool;
+
+  @Autowired
+  public HiveConnectionPool(Hive hiveClient, Config.HivePool config,
+                            UserCredentials credentials) {
+    this(hiveClient, config, credentials, Clock.systemUTC());
+  }
+
+  HiveConnectionPool(Hive hiveClient, Config.HivePool config, UserCredentials credentials,
+                     Clock clock) {
+    final GenericKeyedObjectPoolConfig poolConfig = new GenericKeyedObjectPoolConfig();
+    poolConfig.setMinIdlePerKey(config.getMinIdlePerKey());
+    poolConfig.setMaxIdlePerKey(config.getMaxTotalPerKey());
+    poolConfig.setMaxTotalPerKey(config.getMaxTotalPerKey());
+    poolConfig.setMaxTotal(config.getMaxTotal());
+    poolConfig.setMaxWaitMillis(config.getMaxWaitMillis());
+    poolConfig.setMinEvictableIdleTimeMillis(config.getIdleTimeoutMillis());
+    poolConfig.setTimeBetweenEvictionRunsMillis(config.getEvictionIntervalMillis());
+    poolConfig.setTestOnBorrow(true);
+    poolConfig.setTestWhileIdle(true);
+    poolConfig.setJmxEnabled(false);
+    this.pool = new GenericKeyedObjectPool<>(
+        new Factory(hiveClient, config, credentials, clock), poolConfig);
+  }
+
+  /**
+   * Borrows connection opened on behalf of given user. Lease must be closed to give the
+   * connection back.
+   * @param userIdentity user identity
+   * @return connection lease
+   */
+  public Lease borrow(JwtToken userIdentity) throws InterruptedException,
+                                                    IOException,
+                                                    LoginException,
+                                                    SQLException,
+                                                    URISyntaxException {
+    final Identity identity = new Identity(userIdentity);
+    try {
+      return new Lease(identity, pool.borrowObject(identity));
+    } catch (InterruptedException |
+        IOException |
+        LoginException |
+        SQLException |
+        URISyntaxException |
+        RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      // not a fault of the request, which IllegalStateException would be taken for
+      throw new SQLException("Can't borrow Hive connection", e);
+    }
+  }
+
+  /**
+   * Closes all idle connections.
+   */
+  public void clear() {
+    pool.clear();
+  }
+
+  @Override
+  public void destroy() {
+    pool.close();
+  }
+
+  /**
+   * Connection borrowed from the pool.
+   */
+  public final class Lease implements AutoCloseable {
+
+    private final Identity identity;
+    private final PooledHiveConnection pooled;
+    private final boolean newConnection;
+    private boolean broken;
+
+    private Lease(Identity identity, PooledHiveConnection pooled) {
+      this.identity = identity;
+      this.pooled = pooled;
+      this.newConnection = !pooled.leased;
+      pooled.leased = true;
+    }
+
+    public Connection connection() {
+      return pooled.connection;
+    }
+
+    /**
+     * @return true if the connection has been opened for this lease rather than reused
+     */
+    public boolean isNewConnection() {
+      return newConnection;
+    }
+
+    /**
+     * Marks connection as unusable, so it's closed instead of being given back to the pool.
+     */
+    public void invalidate() {
+      broken = true;
+    }
+
+    @Override
+    public void close() {
+      try {
+        if (broken) {
+          pool.invalidateObject(identity, pooled);
+        } else {
+          pool.returnObject(identity, pooled);
+        }
+      } catch (Exception e) {
+        LOGGER.warn("Can't release Hive connection", e);
+      }
+    }
+  }
+
+  /**
+   * Pool key. Identities are equal when they belong to the same user, while each keeps the
+   * token it was created with, so that new connections are opened with the most recent one.
+   */
+  private static final class Identity {
+
+    private final String userId;
+    private final JwtToken token;
+
+    private Identity(JwtToken token) {
+      this.userId = token.getUserId();
+      this.token = token;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o || o instanceof Identity && Objects.equals(userId, ((Identity) o).userId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(userId);
+    }
+  }
+
+  private static final class PooledHiveConnection {
+
+    private final Connection connection;
+    private final long retireAt;
+    private long validatedAt;
+    private boolean leased;
+
+    private PooledHiveConnection(Connection connection, long retireAt, long validatedAt) {
+      this.connection = connection;
+      this.retireAt = retireAt;
+      this.validatedAt = validatedAt;
+    }
+  }
+
+  private static final class Factory
+      extends BaseKeyedPooledObjectFactory<Identity, PooledHiveConnection> {
+
+    private final Hive hiveClient;
+    private final Config.HivePool config;
+    private final UserCredentials credentials;
+    private final Clock clock;
+
+    private Factory(Hive hiveClient, Config.HivePool config, UserCredentials credentials,
+                    Clock clock) {
+      this.hiveClient = hiveClient;
+      this.config = config;
+      this.credentials = credentials;
+      this.clock = clock;
+    }
+
+    @Override
+    public PooledHiveConnection create(Identity identity) throws Exception {
+      final long now = clock.millis();
+      final long expiresAt = credentials.expiresAt(identity.token);
+      if (now >= expiresAt) {
+        throw new LoginException("Token of user " + identity.userId + " has expired");
+      }
+      long retireAt = expiresAt - config.getTokenExpiryMarginMillis();
+      if (retireAt <= now) {
+        // connection opened shortly before expiry stays usable until the token itself expires
+        retireAt = expiresAt;
+      }
+      LOGGER.debug("Open Hive connection for user {}", identity.userId);
+      return new PooledHiveConnection(hiveClient.getConnection(identity.token), retireAt, now);
+    }
+
+    @Override
+    public PooledObject<PooledHiveConnection> wrap(PooledHiveConnection connection) {
+      return new DefaultPooledObject<>(connection);
+    }
+
+    @Override
+    public boolean validateObject(Identity identity, PooledObject<PooledHiveConnection> p) {
+      final PooledHiveConnection pooled = p.getObject();
+      final long now = clock.millis();
+      if (now >= pooled.retireAt) {
+        LOGGER.debug("Retire Hive connection of user {} before token expiry", identity.userId);
+        return false;
+      }
+      try {
+        if (pooled.connection.isClosed()) {
+          return false;
+        }
+        if (!Strings.isNullOrEmpty(config.getValidationQuery())
+            && now - pooled.validatedAt >= config.getValidationIntervalMillis()) {
+          try (Statement stm = pooled.connection.createStatement()) {
+            stm.execute(config.getValidationQuery());
+          }
+          pooled.validatedAt = now;
+        }
+        return true;
+      } catch (SQLException e) {
+        LOGGER.debug("Hive connection of user {} failed validation", identity.userId, e);
+        return false;
+      }
+    }
+
+    @Override
+    public void destroyObject(Identity identity, PooledObject<PooledHiveConnection> p)
+        throws SQLException {
+      p.getObject().connection.close();
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.base.Throwables;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Clock;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker and bulkhead in front of HiveServer2.
+ *
+ * The bulkhead limits number of concurrent Hive calls, so that a hanging HiveServer2 can't take
+ * all request threads. The breaker tracks outcomes of the most recent calls and once too many of
+ * them have failed to reach Hive, rejects calls for a while. Then a few probing calls are let
+ * through and their outcome decides whether the breaker closes or opens again. Only failures of
+ * connectivity count; errors reported by Hive itself, like invalid statements, mean it's up.
+ */
+@Component
+public class HiveGuard {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HiveGuard.class);
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final Config.Guard config;
+  private final Clock clock;
+  private final Semaphore bulkhead;
+  // outcomes of the most recent calls, true for failures
+  private final boolean[] window;
+  private int calls;
+  private int failures;
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int probes;
+
+  @Autowired
+  public HiveGuard(Config.Guard config) {
+    this(config, Clock.systemUTC());
+  }
+
+  HiveGuard(Config.Guard config, Clock clock) {
+    this.config = config;
+    this.clock = clock;
+    this.bulkhead = new Semaphore(config.getMaxConcurrentCalls());
+    this.window = new boolean[config.getWindowSize()];
+  }
+
+  /**
+   * Acquires permission to call Hive.
+   * @return permit which must be released with outcome of the call
+   * @throws HiveUnavailableException if the breaker is open or the bulkhead is full
+   */
+  public Permit acquire() {
+    if (!config.isEnabled()) {
+      return new Permit(false);
+    }
+    final boolean probe = admit();
+    try {
+      if (!bulkhead.tryAcquire(config.getMaxWaitMillis(), TimeUnit.MILLISECONDS)) {
+        abandon(probe);
+        throw new HiveUnavailableException("Too many concurrent Hive calls",
+                                           seconds(config.getMaxWaitMillis()));
+      }
+    } catch (InterruptedException e) {
+      abandon(probe);
+      Thread.currentThread().interrupt();
+      throw new HiveUnavailableException("Interrupted while waiting for Hive", 1);
+    }
+    return new Permit(probe);
+  }
+
+  /**
+   * Tells whether failure of a call means that Hive couldn't be reached. Hive JDBC driver reports
+   * errors of statements with SQL state 08S01 too, so only states of failures to connect count,
+   * next to timeouts and broken transport.
+   * @param failure failure of the call
+   * @return true for failures of connectivity
+   */
+  public static boolean isUnavailability(Exception failure) {
+    if (failure instanceof SQLTimeoutException
+        || failure instanceof IOException
+        || Throwables.getRootCause(failure) instanceof IOException) {
+      return true;
+    }
+    if (failure instanceof SQLException) {
+      // unable to establish connection, connection rejected
+      final String state = ((SQLException) failure).getSQLState();
+      return "08001".equals(state) || "08004".equals(state);
+    }
+    return false;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  private synchronized boolean admit() {
+    if (state == State.OPEN) {
+      final long retryAt = openedAt + config.getOpenMillis();
+      final long now = clock.millis();
+      if (now < retryAt) {
+        throw new HiveUnavailableException("Hive is unavailable", seconds(retryAt - now));
+      }
+      LOGGER.info("Probing Hive after {} ms", config.getOpenMillis());
+      state = State.HALF_OPEN;
+      probes = 0;
+    }
+    if (state == State.HALF_OPEN) {
+      if (probes >= config.getHalfOpenProbes()) {
+        throw new HiveUnavailableException("Hive is being probed", 1);
+      }
+      probes++;
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized void abandon(boolean probe) {
+    if (probe && state == State.HALF_OPEN) {
+      probes--;
+    }
+  }
+
+  private synchronized void complete(boolean probe, boolean failed) {
+    if (probe) {
+      if (state != State.HALF_OPEN) {
+        return;
+      }
+      if (failed) {
+        open();
+      } else if (--probes == 0) {
+        LOGGER.info("Hive is available again");
+        reset();
+        state = State.CLOSED;
+      }
+      return;
+    }
+    if (state != State.CLOSED) {
+      // calls started before the breaker opened don't count
+      return;
+    }
+    final int slot = calls % window.length;
+    if (calls >= window.length && window[slot]) {
+      failures--;
+    }
+    window[slot] = failed;
+    calls++;
+    if (failed) {
+      failures++;
+    }
+    final int recent = Math.min(calls, window.length);
+    if (recent >= config.getMinimumCalls()
+        && failures * 100 >= config.getFailureRateThreshold() * recent) {
+      open();
+    }
+  }
+
+  private void open() {
+    LOGGER.warn("Hive is unavailable, calls are rejected for {} ms", config.getOpenMillis());
+    state = State.OPEN;
+    openedAt = clock.millis();
+    reset();
+  }
+
+  private void reset() {
+    calls = 0;
+    failures = 0;
+    probes = 0;
+  }
+
+  private static long seconds(long millis) {
+    return Math.max(1, (millis + TimeUnit.SECONDS.toMillis(1) - 1) / TimeUnit.SECONDS.toMillis(1));
+  }
+
+  /**
+   * Permission to call Hive.
+   */
+  public final class Permit {
+
+    private final boolean probe;
+
+    private Permit(boolean probe) {
+      this.probe = probe;
+    }
+
+    /**
+     * Releases the permit.
+     * @param failed true if the call failed to reach Hive
+     */
+    public void release(boolean failed) {
+      if (!config.isEnabled()) {
+        return;
+      }
+      bulkhead.release();
+      complete(probe, failed);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers of stages of publishing and counters of failures, exposed by the actuator metrics
+ * endpoint. Metrics are tagged by operation and organization database, encoded in their names,
+ * e.g. publish.ddl.create.&lt;org&gt;.p99 or publish.failure.drop.&lt;org&gt;.SQLException. Number
+ * of timers is bounded, the one recorded least recently is dropped to make room for a new one.
+ */
+@Component
+public class HiveMetrics implements PublicMetrics {
+
+  private static final String PREFIX = "publish.";
+  static final int WINDOW_SIZE = 1024;
+  static final int MAX_TIMERS = 1024;
+  /**
+   * Organization tag of operations whose organization isn't known to be valid.
+   */
+  public static final String UNKNOWN_ORG = "unknown";
+
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  public enum Operation {
+    CREATE, DROP, COLUMNAR, STATISTICS, TEARDOWN, INDEX, IMPALA;
+
+    private String tag() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  public enum Stage {
+    TOKEN, MAPPING, CONNECTION, DDL;
+
+    private String tag() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /**
+   * Records duration of stage not related to any operation or organization.
+   * @param stage stage of publishing
+   * @param nanos duration in nanoseconds
+   */
+  public void record(Stage stage, long nanos) {
+    timer(PREFIX + stage.tag()).record(nanos);
+  }
+
+  /**
+   * Records duration of stage of operation.
+   * @param stage stage of publishing
+   * @param operation operation
+   * @param org organization database
+   * @param nanos duration in nanoseconds
+   */
+  public void record(Stage stage, Operation operation, String org, long nanos) {
+    timer(PREFIX + stage.tag() + "." + operation.tag() + "." + org).record(nanos);
+  }
+
+  /**
+   * Counts failure of operation by its type.
+   * @param operation operation
+   * @param org organization database
+   * @param failure cause of failure
+   */
+  public void failed(Operation operation, String org, Exception failure) {
+    counters.computeIfAbsent(PREFIX + "failure." + operation.tag() + "." + org + "." +
+                             failure.getClass().getSimpleName(), name -> new LongAdder())
+        .increment();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    final List<Metric<?>> metrics = new ArrayList<>();
+    timers.forEach((name, timer) -> timer.snapshot(name, metrics));
+    counters.forEach((name, counter) -> metrics.add(new Metric<>(name, counter.sum())));
+    return metrics;
+  }
+
+  private Timer timer(String name) {
+    final Timer timer = timers.get(name);
+    if (timer != null) {
+      return timer;
+    }
+    if (timers.size() >= MAX_TIMERS) {
+      timers.entrySet().stream()
+          .min(Comparator.comparingLong(entry -> entry.getValue().lastRecorded))
+          .ifPresent(idlest -> timers.remove(idlest.getKey(), idlest.getValue()));
+    }
+    return timers.computeIfAbsent(name, key -> new Timer());
+  }
+
+  /**
+   * Count and maximum of all durations and percentiles of the most recent ones.
+   */
+  private static class Timer {
+    private final long[] window = new long[WINDOW_SIZE];
+    private long count;
+    private long max;
+    private volatile long lastRecorded = System.nanoTime();
+
+    private synchronized void record(long nanos) {
+      window[(int) (count % WINDOW_SIZE)] = nanos;
+      count++;
+      max = Math.max(max, nanos);
+      lastRecorded = System.nanoTime();
+    }
+
+    private void snapshot(String name, List<Metric<?>> metrics) {
+      final long[] recent;
+      final long total;
+      final long maximum;
+      synchronized (this) {
+        recent = Arrays.copyOf(window, (int) Math.min(count, WINDOW_SIZE));
+        total = count;
+        maximum = max;
+      }
+      Arrays.sort(recent);
+      metrics.add(new Metric<>(name + ".count", total));
+      metrics.add(new Metric<>(name + ".max", millis(maximum)));
+      metrics.add(new Metric<>(name + ".mean", millis(Arrays.stream(recent).sum())
+                                               / Math.max(recent.length, 1)));
+      metrics.add(new Metric<>(name + ".p50", millis(percentile(recent, 0.50))));
+      metrics.add(new Metric<>(name + ".p95", millis(percentile(recent, 0.95))));
+      metrics.add(new Metric<>(name + ".p99", millis(percentile(recent, 0.99))));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+      return sorted.length == 0 ? 0 : sorted[(int) Math.ceil(quantile * sorted.length) - 1];
+    }
+
+    private static double millis(long nanos) {
+      return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+  }
+}
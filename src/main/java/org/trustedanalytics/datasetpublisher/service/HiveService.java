@@ -16,22 +16,39 @@
 package org.trustedanalytics.datasetpublisher.service;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.trustedanalytics.datasetpublisher.Config;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
-import org.trustedanalytics.hadoop.config.client.helper.Hive;
 import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
 
-import java.io.IOException;
-import java.net.URISyntaxException;
-import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import javax.security.auth.login.LoginException;
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.CREATE;
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.DROP;
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.TEARDOWN;
 
 /**
  * Service executing queries to create and drop tables.
@@ -41,45 +58,397 @@ public class HiveService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HiveService.class);
   private final QueryBuilder queryBuilder;
-  private final Hive hiveClient;
+  private final HiveSessions sessions;
+  private final TableExistenceCache existenceCache;
+  private final ExecutorService batchExecutor;
+  private final SlowOperationLog slowLog;
+  private final Config.Teardown teardown;
+  private final Config.SchemaEvolution schemaEvolution;
+  private final Set<String> knownDatabases = Sets.newConcurrentHashSet();
+  private final SingleFlight flights = new SingleFlight();
+  private List<TableEnricher> enrichers = Collections.emptyList();
+  private List<HiveTableListener> listeners = Collections.emptyList();
 
   @Autowired
-  public HiveService(QueryBuilder queryBuilder, Hive hiveClient) {
+  public HiveService(QueryBuilder queryBuilder,
+                     HiveSessions sessions,
+                     TableExistenceCache existenceCache,
+                     @Qualifier("batchExecutor") ExecutorService batchExecutor,
+                     SlowOperationLog slowLog,
+                     Config.Teardown teardown,
+                     Config.SchemaEvolution schemaEvolution) {
     this.queryBuilder = queryBuilder;
-    this.hiveClient = hiveClient;
+    this.sessions = sessions;
+    this.existenceCache = existenceCache;
+    this.batchExecutor = batchExecutor;
+    this.slowLog = slowLog;
+    this.teardown = teardown;
+    this.schemaEvolution = schemaEvolution;
+  }
+
+  @Autowired(required = false)
+  public void setEnrichers(List<TableEnricher> enrichers) {
+    this.enrichers = enrichers;
+  }
+
+  @Autowired(required = false)
+  public void setListeners(List<HiveTableListener> listeners) {
+    this.listeners = listeners;
   }
 
   /**
-   * Creates table if it doesn't exist
+   * Creates table if it doesn't exist. Concurrent identical requests of the same user share a
+   * single execution and operations on the same table run in order of arrival.
    * @param table hive table
    * @param userIdentity user identity
    */
   public void createTable(HiveTable table, JwtToken userIdentity) {
-    // ensure database exists
-    execute(queryBuilder.createTable(table), userIdentity);
+    flights.run(table.getFullyQualifiedName(),
+                Arrays.asList(CREATE, table.getSignature(), userIdentity.getUserId()),
+                () -> createTableInOrder(table, userIdentity));
+  }
+
+  private void createTableInOrder(HiveTable table, JwtToken userIdentity) {
+    if (existenceCache.contains(table, userIdentity)) {
+      LOGGER.debug("Table {} already exists", table.getFullyQualifiedName());
+      notifyListeners(listener -> listener.tableRequested(table, userIdentity));
+      return;
+    }
+    final OperationTrace trace = new OperationTrace();
+    final HiveTable definition = enrich(table, userIdentity, trace);
+    RuntimeException failure = null;
+    try {
+      sessions.run(userIdentity, CREATE, table.databaseName, trace, stm -> {
+        ensureDatabase(stm, definition, trace);
+        createTable(stm, definition, trace);
+      });
+    } catch (RuntimeException e) {
+      // database may have been dropped outside of the service
+      knownDatabases.remove(table.databaseName);
+      failure = e;
+      throw e;
+    } finally {
+      slowLog.record(CREATE, definition, trace, failure);
+    }
+    existenceCache.add(table, userIdentity);
+    notifyListeners(listener -> listener.tableCreated(definition, userIdentity));
   }
 
   /**
-   * Drops table if it exists
+   * Creates tables which don't exist. Tables are grouped by database, tables of each group are
+   * created in a single session and groups are created in parallel. Like single requests, each
+   * table shares creation with identical concurrent request and waits for other operations on it.
+   * @param tables hive tables
+   * @param userIdentity user identity, must not be request scoped
+   * @return failure of creation of each table, in order of tables
+   */
+  public List<Optional<Exception>> createTables(List<HiveTable> tables, JwtToken userIdentity) {
+    final Map<String, List<Integer>> groups = IntStream.range(0, tables.size()).boxed()
+        .collect(Collectors.groupingBy(i -> tables.get(i).databaseName, LinkedHashMap::new,
+                                       Collectors.toList()));
+
+    final List<Optional<Exception>> outcomes =
+        new ArrayList<>(Collections.nCopies(tables.size(), Optional.empty()));
+    final CompletableFuture<?>[] futures = groups.values().stream()
+        .map(indexes -> CompletableFuture.runAsync(() -> {
+          final List<HiveTable> group = indexes.stream().map(tables::get)
+              .collect(Collectors.toList());
+          final List<Optional<Exception>> groupOutcomes =
+              createTablesInDatabase(group, userIdentity);
+          for (int i = 0; i < indexes.size(); i++) {
+            outcomes.set(indexes.get(i), groupOutcomes.get(i));
+          }
+        }, batchExecutor))
+        .toArray(CompletableFuture<?>[]::new);
+    CompletableFuture.allOf(futures).join();
+    return outcomes;
+  }
+
+  /**
+   * Drops table if it exists. Concurrent drops by the same user share a single execution and
+   * operations on the same table run in order of arrival.
    * @param table hive table
    * @param userIdentity user identity
    */
   public void dropTable(HiveTable table, JwtToken userIdentity) {
-    execute(queryBuilder.dropTable(table), userIdentity);
-  }
-
-  private void execute(String sql, JwtToken userIdentity) {
-    LOGGER.info("Execute: {}", sql);
-    try (Connection connection = hiveClient.getConnection(userIdentity)) {
-      Statement stm = connection.createStatement();
-      stm.executeUpdate(sql);
-    } catch (InterruptedException |
-        IOException |
-        LoginException |
-        SQLException |
-        URISyntaxException e) {
-      LOGGER.error(String.format("Can't execute query %s", sql), e);
-      throw Throwables.propagate(e);
+    flights.run(table.getFullyQualifiedName(), Arrays.asList(DROP, userIdentity.getUserId()),
+                () -> dropTableInOrder(table, userIdentity));
+  }
+
+  private void dropTableInOrder(HiveTable table, JwtToken userIdentity) {
+    existenceCache.invalidate(table);
+    final OperationTrace trace = new OperationTrace();
+    RuntimeException failure = null;
+    try {
+      sessions.run(userIdentity, DROP, table.databaseName, trace,
+                   stm -> execute(stm, queryBuilder.dropTable(table), trace, "drop_table"));
+    } catch (RuntimeException e) {
+      failure = e;
+      throw e;
+    } finally {
+      // forget table which may have been re-created by concurrent request in the meantime
+      existenceCache.invalidate(table);
+      slowLog.record(DROP, table, trace, failure);
+    }
+    notifyListeners(listener -> listener.tableDropped(table, userIdentity));
+  }
+
+  /**
+   * Lists tables of the database.
+   * @param databaseName database name
+   * @param userIdentity user identity
+   * @return names of tables
+   */
+  public List<String> listTables(String databaseName, JwtToken userIdentity) {
+    final List<String> tables = new ArrayList<>();
+    sessions.run(userIdentity, TEARDOWN, databaseName, stm -> {
+      try (ResultSet rs = stm.executeQuery(queryBuilder.showTables(databaseName))) {
+        while (rs.next()) {
+          tables.add(rs.getString(1));
+        }
+      }
+    });
+    return tables;
+  }
+
+  /**
+   * Drops all tables of the database and the database itself. Unless database is dropped with
+   * cascade, tables are dropped in batches, each batch in a single session, and batches are
+   * dropped in parallel. Database which still has tables which couldn't be dropped is kept.
+   * @param databaseName database name
+   * @param userIdentity user identity, must not be request scoped
+   * @param progress progress, updated as tables are dropped
+   */
+  public void dropDatabase(String databaseName, JwtToken userIdentity,
+                           TeardownProgress progress) {
+    try {
+      final List<String> tables = listTables(databaseName, userIdentity);
+      progress.listed(tables.size());
+      if (teardown.isCascade()) {
+        sessions.run(userIdentity, TEARDOWN, databaseName, stm ->
+            HiveSessions.execute(stm, queryBuilder.dropDatabase(databaseName, true)));
+        progress.dropped(tables.size());
+        return;
+      }
+
+      final CompletableFuture<?>[] futures =
+          Lists.partition(tables, teardown.getBatchSize()).stream()
+              .map(batch -> CompletableFuture.runAsync(
+                  () -> dropTablesInSession(databaseName, batch, userIdentity, progress),
+                  batchExecutor))
+              .toArray(CompletableFuture<?>[]::new);
+      CompletableFuture.allOf(futures).join();
+      if (progress.getFailed().isEmpty()) {
+        sessions.run(userIdentity, TEARDOWN, databaseName, stm ->
+            HiveSessions.execute(stm, queryBuilder.dropDatabase(databaseName, false)));
+      }
+    } finally {
+      // some tables may be gone even if teardown failed
+      knownDatabases.remove(databaseName);
+      existenceCache.invalidateDatabase(databaseName);
+      notifyListeners(listener -> listener.databaseDropped(databaseName, userIdentity));
+    }
+  }
+
+  private void dropTablesInSession(String databaseName, List<String> tables,
+                                   JwtToken userIdentity, TeardownProgress progress) {
+    final List<String> remaining = new ArrayList<>(tables);
+    try {
+      sessions.run(userIdentity, TEARDOWN, databaseName, stm -> {
+        while (!remaining.isEmpty()) {
+          final String table = remaining.get(0);
+          final HiveTable hiveTable =
+              new HiveTable(databaseName, table, Collections.emptyList(), null);
+          try {
+            HiveSessions.execute(stm, queryBuilder.dropTable(hiveTable));
+            progress.dropped(1);
+          } catch (SQLException e) {
+            if (HiveGuard.isUnavailability(e)) {
+              // connection is lost, session gets invalidated and the rest of the batch fails
+              throw e;
+            }
+            LOGGER.error(String.format("Can't drop table %s",
+                                       hiveTable.getFullyQualifiedName()), e);
+            progress.failed(table, e);
+          }
+          remaining.remove(0);
+        }
+      });
+    } catch (RuntimeException e) {
+      // tables which haven't been reached share failure of the session
+      remaining.forEach(table -> progress.failed(table, e));
+    }
+  }
+
+  private List<Optional<Exception>> createTablesInDatabase(List<HiveTable> tables,
+                                                           JwtToken userIdentity) {
+    final List<Optional<Exception>> outcomes = new ArrayList<>(tables.size());
+    final List<OperationTrace> traces = tables.stream()
+        .map(table -> new OperationTrace())
+        .collect(Collectors.toList());
+    // definitions of tables which are not known to exist, null for the known ones
+    final List<HiveTable> definitions = new ArrayList<>(tables.size());
+    for (int i = 0; i < tables.size(); i++) {
+      final HiveTable table = tables.get(i);
+      definitions.add(existenceCache.contains(table, userIdentity)
+                      ? null : enrich(table, userIdentity, traces.get(i)));
+    }
+    for (int i = 0; i < tables.size(); i++) {
+      if (definitions.get(i) == null) {
+        final HiveTable table = tables.get(i);
+        notifyListeners(listener -> listener.tableRequested(table, userIdentity));
+      }
+    }
+    try {
+      if (definitions.stream().anyMatch(Objects::nonNull)) {
+        // connecting and creating the database are shared by all tables of the session
+        final OperationTrace session = new OperationTrace();
+        sessions.run(userIdentity, CREATE, tables.get(0).databaseName, session, stm -> {
+          ensureDatabase(stm, tables.get(0), session);
+          for (int i = 0; i < tables.size(); i++) {
+            final HiveTable definition = definitions.get(i);
+            final OperationTrace trace = traces.get(i);
+            trace.include(session);
+            outcomes.add(definition != null
+                         ? createTableInFlight(stm, tables.get(i), definition, userIdentity, trace)
+                         : Optional.empty());
+          }
+        });
+      }
+    } catch (RuntimeException e) {
+      knownDatabases.remove(tables.get(0).databaseName);
+      // tables which haven't been reached share failure of the session
+      while (outcomes.size() < tables.size()) {
+        outcomes.add(Optional.of(e));
+      }
+    }
+    while (outcomes.size() < tables.size()) {
+      outcomes.add(Optional.empty());
+    }
+    return outcomes;
+  }
+
+  private Optional<Exception> createTableInFlight(Statement stm, HiveTable table,
+                                                  HiveTable definition, JwtToken userIdentity,
+                                                  OperationTrace trace) {
+    final Object fingerprint =
+        Arrays.asList(CREATE, table.getSignature(), userIdentity.getUserId());
+    try {
+      flights.run(table.getFullyQualifiedName(), fingerprint, () -> {
+        // table may have been created by the operation which this one has waited for
+        if (existenceCache.contains(table, userIdentity)) {
+          notifyListeners(listener -> listener.tableRequested(table, userIdentity));
+          return;
+        }
+        createTableInSession(stm, table, definition, userIdentity, trace).ifPresent(failure -> {
+          throw Throwables.propagate(failure);
+        });
+      });
+      return Optional.empty();
+    } catch (RuntimeException e) {
+      // failure of this operation or of the identical one which it has joined
+      return Optional.of(e.getCause() instanceof SQLException ? (SQLException) e.getCause() : e);
+    }
+  }
+
+  private Optional<Exception> createTableInSession(Statement stm, HiveTable table,
+                                                   HiveTable definition, JwtToken userIdentity,
+                                                   OperationTrace trace) {
+    try {
+      createTable(stm, definition, trace);
+      slowLog.record(CREATE, definition, trace, null);
+      existenceCache.add(table, userIdentity);
+      notifyListeners(listener -> listener.tableCreated(definition, userIdentity));
+      return Optional.empty();
+    } catch (SQLException e) {
+      LOGGER.error(String.format("Can't create table %s", table.getFullyQualifiedName()), e);
+      slowLog.record(CREATE, definition, trace, e);
+      knownDatabases.remove(table.databaseName);
+      return Optional.of(e);
+    }
+  }
+
+  private void createTable(Statement stm, HiveTable definition, OperationTrace trace)
+      throws SQLException {
+    final Optional<HiveTable> live = schemaEvolution.isEnabled()
+                                     ? describe(stm, definition, trace) : Optional.empty();
+    if (live.isPresent()) {
+      // existing table is altered in place, so that queries running against it don't break
+      if (live.get().format.delimiter != definition.format.delimiter
+          && !definition.partitionColumns.isEmpty()) {
+        LOGGER.warn("Delimiter of partitioned table {} can't be changed in place, it stays '{}'",
+                    definition.getFullyQualifiedName(), live.get().format.delimiter);
+      }
+      for (String alter : queryBuilder.alterTable(live.get(), definition)) {
+        execute(stm, alter, trace, "alter_table");
+      }
+    } else {
+      execute(stm, queryBuilder.createTable(definition), trace, "create_table");
+    }
+    for (String addPartitions : queryBuilder.addPartitions(definition)) {
+      execute(stm, addPartitions, trace, "add_partitions");
+    }
+  }
+
+  private Optional<HiveTable> describe(Statement stm, HiveTable table, OperationTrace trace)
+      throws SQLException {
+    final long start = System.nanoTime();
+    try {
+      try (ResultSet rs = stm.executeQuery(queryBuilder.showTable(table))) {
+        if (!rs.next()) {
+          return Optional.empty();
+        }
+      }
+      try (ResultSet rs = stm.executeQuery(queryBuilder.describeTable(table))) {
+        return Optional.of(TableDescription.read(table, rs));
+      }
+    } finally {
+      trace.record("describe_table", System.nanoTime() - start);
+    }
+  }
+
+  private HiveTable enrich(HiveTable table, JwtToken userIdentity, OperationTrace trace) {
+    HiveTable enriched = table;
+    for (TableEnricher enricher : enrichers) {
+      final long start = System.nanoTime();
+      try {
+        enriched = enricher.enrich(enriched, userIdentity);
+      } catch (RuntimeException e) {
+        // table can still be created with what's known so far
+        LOGGER.warn(String.format("Enricher %s failed", enricher.getClass().getSimpleName()), e);
+      } finally {
+        trace.record("enrich", System.nanoTime() - start);
+      }
+    }
+    return enriched;
+  }
+
+  private void notifyListeners(Consumer<HiveTableListener> event) {
+    for (HiveTableListener listener : listeners) {
+      try {
+        event.accept(listener);
+      } catch (RuntimeException e) {
+        // table is already there, failure of follow-up work doesn't fail the request
+        LOGGER.error(String.format("Listener %s failed", listener.getClass().getSimpleName()), e);
+      }
+    }
+  }
+
+  private void ensureDatabase(Statement stm, HiveTable table, OperationTrace trace)
+      throws SQLException {
+    if (!knownDatabases.contains(table.databaseName)) {
+      execute(stm, queryBuilder.createDatabase(table), trace, "create_database");
+      knownDatabases.add(table.databaseName);
+    }
+  }
+
+  private static void execute(Statement stm, String sql, OperationTrace trace, String stage)
+      throws SQLException {
+    final long start = System.nanoTime();
+    try {
+      HiveSessions.execute(stm, sql);
+    } finally {
+      trace.record(stage, System.nanoTime() - start);
     }
   }
 }
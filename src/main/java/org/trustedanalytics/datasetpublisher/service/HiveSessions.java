@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.base.Throwables;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.NoSuchElementException;
+
+import javax.security.auth.login.LoginException;
+
+/**
+ * Runs statements in sessions of pooled Hive connections.
+ */
+@Component
+public class HiveSessions {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HiveSessions.class);
+  static final String CONNECTION_STAGE = "connection";
+  private final HiveConnectionPool connectionPool;
+  private final HiveMetrics metrics;
+  private final HiveGuard guard;
+
+  @Autowired
+  public HiveSessions(HiveConnectionPool connectionPool, HiveMetrics metrics, HiveGuard guard) {
+    this.connectionPool = connectionPool;
+    this.metrics = metrics;
+    this.guard = guard;
+  }
+
+  /**
+   * Executes work in a single session of the user.
+   * @param userIdentity user identity
+   * @param operation operation the work is part of
+   * @param org organization database the work is done in
+   * @param work statements to execute
+   */
+  public void run(JwtToken userIdentity, HiveMetrics.Operation operation, String org,
+                  SessionWork work) {
+    run(userIdentity, operation, org, new OperationTrace(), work);
+  }
+
+  /**
+   * Executes work in a single session of the user, recording connection stage in the trace.
+   * @param userIdentity user identity
+   * @param operation operation the work is part of
+   * @param org organization database the work is done in
+   * @param trace trace of the operation
+   * @param work statements to execute
+   */
+  public void run(JwtToken userIdentity, HiveMetrics.Operation operation, String org,
+                  OperationTrace trace, SessionWork work) {
+    final HiveGuard.Permit permit = guard.acquire();
+    boolean unavailable = false;
+    try (HiveConnectionPool.Lease lease = borrow(userIdentity, operation, org, trace)) {
+      final long executing = System.nanoTime();
+      try (Statement stm = lease.connection().createStatement()) {
+        work.execute(stm);
+      } catch (SQLException e) {
+        // don't give back connection which may be left in broken state
+        lease.invalidate();
+        throw e;
+      } finally {
+        metrics.record(HiveMetrics.Stage.DDL, operation, org, System.nanoTime() - executing);
+      }
+    } catch (NoSuchElementException e) {
+      // all connections of the user are busy, which says nothing about Hive itself
+      metrics.failed(operation, org, e);
+      throw new HiveUnavailableException("Too many Hive sessions of the user", 1);
+    } catch (InterruptedException |
+        IOException |
+        LoginException |
+        SQLException |
+        URISyntaxException e) {
+      LOGGER.error("Hive session failed", e);
+      metrics.failed(operation, org, e);
+      unavailable = HiveGuard.isUnavailability(e);
+      throw Throwables.propagate(e);
+    } finally {
+      permit.release(unavailable);
+    }
+  }
+
+  private HiveConnectionPool.Lease borrow(JwtToken userIdentity,
+                                          HiveMetrics.Operation operation, String org,
+                                          OperationTrace trace)
+      throws InterruptedException, IOException, LoginException, SQLException, URISyntaxException {
+    final long start = System.nanoTime();
+    try {
+      final HiveConnectionPool.Lease lease = connectionPool.borrow(userIdentity);
+      if (lease.isNewConnection()) {
+        trace.connectionOpened();
+      }
+      return lease;
+    } finally {
+      final long duration = System.nanoTime() - start;
+      metrics.record(HiveMetrics.Stage.CONNECTION, operation, org, duration);
+      trace.record(CONNECTION_STAGE, duration);
+    }
+  }
+
+  /**
+   * Executes statement, failure carries the statement in its message.
+   * @param stm statement of the session
+   * @param sql query to execute
+   */
+  public static void execute(Statement stm, String sql) throws SQLException {
+    LOGGER.info("Execute: {}", sql);
+    try {
+      stm.executeUpdate(sql);
+    } catch (SQLException e) {
+      throw new SQLException(String.format("Can't execute query %s", sql),
+                             e.getSQLState(), e.getErrorCode(), e);
+    }
+  }
+
+  /**
+   * Statements executed in a session.
+   */
+  @FunctionalInterface
+  public interface SessionWork {
+
+    void execute(Statement stm) throws SQLException;
+  }
+}
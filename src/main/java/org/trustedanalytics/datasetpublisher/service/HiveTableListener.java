@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+/**
+ * Listener notified about tables created and dropped by {@link HiveService}. Listeners are
+ * called by the thread which has executed the statement; identity may be request scoped and must
+ * be copied before it's used by other threads.
+ */
+public interface HiveTableListener {
+
+  default void tableCreated(HiveTable table, JwtToken userIdentity) {
+  }
+
+  default void tableDropped(HiveTable table, JwtToken userIdentity) {
+  }
+
+  /**
+   * Called when table known to exist is published again, which hints that it's in use.
+   */
+  default void tableRequested(HiveTable table, JwtToken userIdentity) {
+  }
+
+  /**
+   * Called when tables of the database have been dropped as a whole, tables of the database are
+   * not reported one by one.
+   */
+  default void databaseDropped(String databaseName, JwtToken userIdentity) {
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+/**
+ * Hive calls are rejected without reaching HiveServer2, because it's failing or all permitted
+ * calls are in progress.
+ */
+public class HiveUnavailableException extends RuntimeException {
+
+  private final long retryAfterSeconds;
+
+  public HiveUnavailableException(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * @return seconds after which the call is worth retrying
+   */
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
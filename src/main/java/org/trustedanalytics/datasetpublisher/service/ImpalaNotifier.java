@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.IMPALA;
+
+/**
+ * Tells Impala about published tables, so that users don't have to invalidate all its metadata
+ * to see them. Tables it may not know yet are invalidated one by one, tables it already knows
+ * are refreshed, which is much cheaper. Tables changed within a window are notified together
+ * at its end, each once, over a single connection of the service kept in a pool.
+ */
+@Component
+public class ImpalaNotifier implements HiveTableListener, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImpalaNotifier.class);
+
+  private final QueryBuilder queryBuilder;
+  private final HiveMetrics metrics;
+  private final Config.Impala config;
+  private final ObjectPool<Connection> connections;
+  private final ScheduledExecutorService executor;
+  // tables notified successfully, which Impala knows and can refresh
+  private final Set<String> known = ConcurrentHashMap.newKeySet();
+  private final Map<String, Notification> pending = new LinkedHashMap<>();
+  private boolean scheduled;
+
+  @Autowired
+  public ImpalaNotifier(QueryBuilder queryBuilder, HiveMetrics metrics, Config.Impala config) {
+    this(queryBuilder, metrics, config, pool(config), Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("impala-notifier-%d").setDaemon(true).build()));
+  }
+
+  ImpalaNotifier(QueryBuilder queryBuilder, HiveMetrics metrics, Config.Impala config,
+                 ObjectPool<Connection> connections, ScheduledExecutorService executor) {
+    this.queryBuilder = queryBuilder;
+    this.metrics = metrics;
+    this.config = config;
+    this.connections = connections;
+    this.executor = executor;
+  }
+
+  @Override
+  public void tableCreated(HiveTable table, JwtToken userIdentity) {
+    changed(table);
+  }
+
+  /**
+   * Table published again may have new data files, which Impala doesn't see until refreshed.
+   */
+  @Override
+  public void tableRequested(HiveTable table, JwtToken userIdentity) {
+    changed(table);
+  }
+
+  @Override
+  public synchronized void tableDropped(HiveTable table, JwtToken userIdentity) {
+    known.remove(table.getFullyQualifiedName());
+    pending.remove(table.getFullyQualifiedName());
+  }
+
+  @Override
+  public synchronized void databaseDropped(String databaseName, JwtToken userIdentity) {
+    known.removeIf(name -> name.startsWith(databaseName + "."));
+    pending.values().removeIf(notification -> notification.table.databaseName.equals(databaseName));
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+    connections.close();
+  }
+
+  private void changed(HiveTable table) {
+    if (!config.isEnabled()) {
+      return;
+    }
+    final String name = table.getFullyQualifiedName();
+    final boolean invalidate = !known.contains(name);
+    synchronized (this) {
+      final Notification notification = pending.get(name);
+      if (notification != null) {
+        // invalidation waiting for the table covers refresh as well
+        notification.table = table;
+        notification.invalidate |= invalidate;
+        return;
+      }
+      if (pending.size() >= config.getMaxPending()) {
+        LOGGER.warn("Too many pending Impala notifications, {} won't be notified", name);
+        return;
+      }
+      pending.put(name, new Notification(table, invalidate));
+      if (scheduled) {
+        return;
+      }
+      // scheduled while holding the lock, so that the flag is never left set without a task
+      try {
+        executor.schedule(this::notifyPending, config.getWindowMillis(), TimeUnit.MILLISECONDS);
+        scheduled = true;
+      } catch (RejectedExecutionException e) {
+        // pending notifications are sent with the next change which gets scheduled
+        LOGGER.warn(String.format("Can't schedule Impala notification of %s", name), e);
+      }
+    }
+  }
+
+  /**
+   * Sends notifications collected within the window. Tables which fail to be refreshed are
+   * invalidated next time, as Impala may have lost them.
+   */
+  void notifyPending() {
+    final List<Notification> notifications;
+    synchronized (this) {
+      notifications = new ArrayList<>(pending.values());
+      pending.clear();
+      scheduled = false;
+    }
+    if (notifications.isEmpty()) {
+      return;
+    }
+    Connection connection = null;
+    boolean broken = false;
+    try {
+      connection = connections.borrowObject();
+      try (Statement stm = connection.createStatement()) {
+        for (Notification notification : notifications) {
+          broken |= !send(stm, notification);
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.warn(String.format("Can't notify Impala about %d tables", notifications.size()), e);
+      notifications.forEach(notification ->
+          known.remove(notification.table.getFullyQualifiedName()));
+      broken = true;
+    } finally {
+      release(connection, broken);
+    }
+  }
+
+  /**
+   * @return false if the statement failed
+   */
+  private boolean send(Statement stm, Notification notification) {
+    final HiveTable table = notification.table;
+    final String sql = notification.invalidate
+                       ? queryBuilder.invalidateMetadata(table)
+                       : queryBuilder.refreshTable(table);
+    final long start = System.nanoTime();
+    try {
+      stm.execute(sql);
+      metrics.record(HiveMetrics.Stage.DDL, IMPALA, table.databaseName, System.nanoTime() - start);
+      known.add(table.getFullyQualifiedName());
+      return true;
+    } catch (SQLException e) {
+      LOGGER.warn(String.format("Impala failed to execute %s", sql), e);
+      metrics.failed(IMPALA, table.databaseName, e);
+      known.remove(table.getFullyQualifiedName());
+      return false;
+    }
+  }
+
+  private void release(Connection connection, boolean broken) {
+    if (connection == null) {
+      return;
+    }
+    try {
+      if (broken) {
+        connections.invalidateObject(connection);
+      } else {
+        connections.returnObject(connection);
+      }
+    } catch (Exception e) {
+      LOGGER.warn("Can't release Impala connection", e);
+    }
+  }
+
+  private static ObjectPool<Connection> pool(Config.Impala config) {
+    final GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+    // notifications are sent by a single thread
+    poolConfig.setMaxTotal(1);
+    poolConfig.setMinEvictableIdleTimeMillis(config.getIdleTimeoutMillis());
+    poolConfig.setTimeBetweenEvictionRunsMillis(config.getIdleTimeoutMillis());
+    poolConfig.setTestOnBorrow(true);
+    poolConfig.setJmxEnabled(false);
+    return new GenericObjectPool<>(new BasePooledObjectFactory<Connection>() {
+      @Override
+      public Connection create() throws SQLException {
+        return DriverManager.getConnection(config.getUrl(), config.getUsername(),
+                                           config.getPassword());
+      }
+
+      @Override
+      public PooledObject<Connection> wrap(Connection connection) {
+        return new DefaultPooledObject<>(connection);
+      }
+
+      /**
+       * Only closed connections are rejected, Hive driver doesn't implement isValid and broken
+       * connections are invalidated once a statement fails on them.
+       */
+      @Override
+      public boolean validateObject(PooledObject<Connection> pooled) {
+        try {
+          return !pooled.getObject().isClosed();
+        } catch (SQLException e) {
+          return false;
+        }
+      }
+
+      @Override
+      public void destroyObject(PooledObject<Connection> pooled) throws SQLException {
+        pooled.getObject().close();
+      }
+    }, poolConfig);
+  }
+
+  private static final class Notification {
+
+    private HiveTable table;
+    private boolean invalidate;
+
+    private Notification(HiveTable table, boolean invalidate) {
+      this.table = table;
+      this.invalidate = invalidate;
+    }
+  }
+}
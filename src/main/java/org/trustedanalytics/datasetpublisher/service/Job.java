@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State of a task running in the background.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Job {
+
+  public enum Status {
+    QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+  }
+
+  private final String id;
+  private final String owner;
+  private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
+  private volatile Object result;
+  private volatile String error;
+  private volatile Future<?> future;
+  private final Object progress;
+
+  Job(String id, String owner, Object progress) {
+    this.id = id;
+    this.owner = owner;
+    this.progress = progress;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Status getStatus() {
+    return status.get();
+  }
+
+  public Object getResult() {
+    return result;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * @return progress reported by the task while it's running, null if task reports none
+   */
+  public Object getProgress() {
+    return progress;
+  }
+
+  /**
+   * @param userId id of the user
+   * @return true if the job has been submitted by the user
+   */
+  boolean isOwnedBy(String userId) {
+    return owner != null && owner.equals(userId);
+  }
+
+  void setFuture(Future<?> future) {
+    this.future = future;
+  }
+
+  boolean start() {
+    return status.compareAndSet(Status.QUEUED, Status.RUNNING);
+  }
+
+  void succeed(Object result) {
+    this.result = result;
+    status.compareAndSet(Status.RUNNING, Status.SUCCEEDED);
+  }
+
+  void fail(Throwable cause) {
+    this.error = cause.getMessage();
+    status.compareAndSet(Status.RUNNING, Status.FAILED);
+  }
+
+  boolean cancel() {
+    if (status.compareAndSet(Status.QUEUED, Status.CANCELLED)
+        || status.compareAndSet(Status.RUNNING, Status.CANCELLED)) {
+      if (future != null) {
+        future.cancel(true);
+      }
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.trustedanalytics.datasetpublisher.Config;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service running tasks in the background on a bounded executor and keeping their outcome
+ * for a limited time. Jobs are seen only by the user who has submitted them.
+ */
+@Service
+public class JobService implements DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobService.class);
+  private final ExecutorService executor;
+  private final Cache<String, Job> jobs;
+
+  @Autowired
+  public JobService(Config.Jobs config) {
+    this.executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(),
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(config.getQueueCapacity()),
+        new ThreadFactoryBuilder().setNameFormat("job-%d").setDaemon(true).build());
+    this.jobs = CacheBuilder.newBuilder()
+        .maximumSize(config.getMaxRetained())
+        .expireAfterWrite(config.getRetentionMillis(), TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Queues task for execution.
+   * @param owner id of the user submitting the task
+   * @param task task to execute
+   * @return queued job
+   * @throws RejectedExecutionException if job queue is full
+   */
+  public Job submit(String owner, Callable<?> task) {
+    return submit(owner, task, null);
+  }
+
+  /**
+   * Queues task for execution.
+   * @param owner id of the user submitting the task
+   * @param task task to execute
+   * @param progress progress of the task, updated by the task while it's running
+   * @return queued job
+   * @throws RejectedExecutionException if job queue is full
+   */
+  public Job submit(String owner, Callable<?> task, Object progress) {
+    final Job job = new Job(UUID.randomUUID().toString(), owner, progress);
+    jobs.put(job.getId(), job);
+    try {
+      job.setFuture(executor.submit(() -> run(job, task)));
+    } catch (RejectedExecutionException e) {
+      jobs.invalidate(job.getId());
+      throw e;
+    }
+    return job;
+  }
+
+  /**
+   * Finds job by id.
+   * @param id job id
+   * @param owner id of the user asking for the job
+   * @return job, empty if it's unknown, has already expired or has been submitted by other user
+   */
+  public Optional<Job> find(String id, String owner) {
+    return Optional.ofNullable(jobs.getIfPresent(id)).filter(job -> job.isOwnedBy(owner));
+  }
+
+  /**
+   * Cancels job which hasn't finished yet. Running job is interrupted, though statement which
+   * has already reached Hive may still complete.
+   * @param id job id
+   * @param owner id of the user cancelling the job
+   * @return cancelled job, empty if it's unknown or has been submitted by other user
+   */
+  public Optional<Job> cancel(String id, String owner) {
+    final Optional<Job> job = find(id, owner);
+    job.ifPresent(Job::cancel);
+    return job;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  private void run(Job job, Callable<?> task) {
+    if (!job.start()) {
+      return;
+    }
+    try {
+      job.succeed(task.call());
+    } catch (Exception e) {
+      LOGGER.error(String.format("Job %s failed", job.getId()), e);
+      job.fail(e);
+    }
+    // retention period of the job starts when it's done
+    jobs.put(job.getId(), job);
+  }
+}
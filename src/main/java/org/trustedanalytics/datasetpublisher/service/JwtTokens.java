@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.security.jwt.JwtHelper;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers reading claims of user identity tokens.
+ */
+public final class JwtTokens {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private JwtTokens() {
+  }
+
+  /**
+   * Reads expiration time of the token.
+   * @param token user identity
+   * @return expiration time in epoch millis, {@link Long#MAX_VALUE} when token carries no expiry
+   */
+  public static long expiresAt(JwtToken token) {
+    try {
+      return expiresAt(claims(token.getRawToken()));
+    } catch (IOException | RuntimeException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Decodes claims of the token, without verifying its signature.
+   * @param rawToken encoded token
+   * @return claims
+   */
+  public static JsonNode claims(String rawToken) throws IOException {
+    return MAPPER.readTree(JwtHelper.decode(rawToken).getClaims());
+  }
+
+  /**
+   * @param claims claims of the token
+   * @return expiration time in epoch millis, {@link Long#MAX_VALUE} when token carries no expiry
+   */
+  public static long expiresAt(JsonNode claims) {
+    final JsonNode exp = claims.get("exp");
+    return exp == null ? Long.MAX_VALUE : TimeUnit.SECONDS.toMillis(exp.asLong());
+  }
+
+  /**
+   * @param claims claims of the token
+   * @return id of the user the token was issued to, null if there's none
+   */
+  public static String subject(JsonNode claims) {
+    final JsonNode subject = claims.has("user_id") ? claims.get("user_id") : claims.get("sub");
+    return subject == null ? null : subject.asText();
+  }
+
+  /**
+   * Tells whether the token has been granted the scope.
+   * @param token user identity
+   * @param scope scope, e.g. console.admin
+   * @return true if the scope is among scopes of the token, false if it isn't or the token can't
+   * be read
+   */
+  public static boolean hasScope(JwtToken token, String scope) {
+    try {
+      return scopes(claims(token.getRawToken())).contains(scope);
+    } catch (IOException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param claims claims of the token
+   * @return scopes granted to the token, empty if there are none
+   */
+  public static Set<String> scopes(JsonNode claims) {
+    final Set<String> scopes = new HashSet<>();
+    final JsonNode scope = claims.get("scope");
+    if (scope != null) {
+      scope.forEach(granted -> scopes.add(granted.asText()));
+    }
+    return scopes;
+  }
+
+  /**
+   * Copies token, so that it can be used outside of the request it was received with.
+   * @param token user identity, possibly request scoped
+   * @return detached user identity
+   */
+  public static JwtToken snapshot(JwtToken token) {
+    return new TapOauthToken(token.getRawToken());
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Durations of stages of a single operation on a table, in order the stages were first entered.
+ * Trace is used by the thread doing the operation only.
+ */
+public final class OperationTrace {
+
+  private final long startedAt = System.nanoTime();
+  private final Map<String, Long> stages = new LinkedHashMap<>();
+  private boolean newConnection;
+
+  /**
+   * Adds duration to the stage.
+   * @param stage name of the stage
+   * @param nanos duration in nanoseconds
+   */
+  public void record(String stage, long nanos) {
+    stages.merge(stage, nanos, Long::sum);
+  }
+
+  /**
+   * Marks that connection has been opened for the operation, which involves login.
+   */
+  void connectionOpened() {
+    newConnection = true;
+  }
+
+  /**
+   * Adds stages of operation this one is part of, e.g. of the session shared by several tables.
+   * @param other trace of the enclosing operation
+   */
+  void include(OperationTrace other) {
+    other.stages.forEach(this::record);
+    newConnection |= other.newConnection;
+  }
+
+  public boolean isNewConnection() {
+    return newConnection;
+  }
+
+  public long elapsedNanos() {
+    return System.nanoTime() - startedAt;
+  }
+
+  public Map<String, Long> getStages() {
+    return stages;
+  }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.Partition;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Detects partitioned layout of the directory holding the published file, i.e. subdirectories
+ * named key=value (e.g. dt=2016-01-01/country=pl) or following configured date pattern
+ * (e.g. yyyy/MM/dd), and makes the table partitioned by these keys with all partitions found.
+ * Layouts which aren't consistent (different keys or depths in different branches) are
+ * published as plain tables.
+ */
+@Component
+@Order(PartitionDetector.ORDER)
+public class PartitionDetector implements TableEnricher {
+
+  public static final int ORDER = 100;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PartitionDetector.class);
+
+  private static final int IDENTIFIER_MAX_LEN = 64;
+  private static final Pattern KEY_VALUE = Pattern.compile("([a-z_][a-z0-9_]*)=(.+)");
+  private static final Map<String, String> DATE_LEVELS = ImmutableMap.of(
+      "yyyy", "year",
+      "MM", "month",
+      "dd", "day",
+      "HH", "hour");
+
+  private final DatasetSource datasetSource;
+  private final Config.Partitioning config;
+  private final Set<String> restrictedKeywords;
+  private final List<String> dateLevels;
+
+  @Autowired
+  public PartitionDetector(DatasetSource datasetSource, Config.Partitioning config,
+                           Supplier<Set<String>> restrictedKeywords) {
+    this.datasetSource = datasetSource;
+    this.config = config;
+    this.restrictedKeywords = restrictedKeywords.get();
+    this.dateLevels = parseDatePattern(config.getDatePattern());
+  }
+
+  @Override
+  public HiveTable enrich(HiveTable table, JwtToken userIdentity) {
+    if (!config.isEnabled() || table.sourceUri == null) {
+      return table;
+    }
+    final String root = root(parent(table.sourceUri));
+    final Layout layout = new Layout(table.databaseName, userIdentity);
+    try {
+      if (!collect(root, new ArrayList<>(), layout)) {
+        return table;
+      }
+    } catch (IOException e) {
+      LOGGER.warn(String.format("Can't list %s, table is left unpartitioned", root), e);
+      return table;
+    }
+    if (layout.partitions.isEmpty()) {
+      return table;
+    }
+
+    final List<String> names = layout.keys.stream()
+        .map(this::columnName)
+        .collect(Collectors.toList());
+    if (new HashSet<>(names).size() < names.size()
+        || table.fields.stream().anyMatch(names::contains)) {
+      LOGGER.warn("Partition keys {} of {} clash with columns, table is left unpartitioned",
+                  names, table.getFullyQualifiedName());
+      return table;
+    }
+    final List<Column> partitionColumns = names.stream()
+        .map(Column::string)
+        .collect(Collectors.toList());
+    LOGGER.debug("Detected {} partitions of {} by {}", layout.partitions.size(),
+                 table.getFullyQualifiedName(), layout.keys);
+    return table.withPartitions(path(root), partitionColumns, layout.partitions);
+  }
+
+  /**
+   * Walks the directory tree collecting partitions.
+   * @return false if the layout isn't partitioned or is inconsistent
+   */
+  private boolean collect(String directory, List<String> values, Layout layout)
+      throws IOException {
+    final int depth = values.size();
+    final List<String> children = datasetSource
+        .listDirectories(directory, layout.databaseName, layout.userIdentity).stream()
+        .filter(child -> !isHidden(name(child)))
+        .collect(Collectors.toList());
+    if (children.isEmpty() || depth == config.getMaxDepth()) {
+      if (depth == 0) {
+        return false;
+      }
+      if (depth != layout.keys.size()) {
+        LOGGER.debug("Partitions of {} have different depths", directory);
+        return false;
+      }
+      if (layout.partitions.size() == config.getMaxPartitions()) {
+        LOGGER.warn("More than {} partitions under {}", config.getMaxPartitions(), directory);
+        return false;
+      }
+      layout.partitions.add(new Partition(values, path(directory)));
+      return true;
+    }
+
+    for (String child : children) {
+      final Optional<String[]> keyValue = keyValue(name(child), depth);
+      if (!keyValue.isPresent()) {
+        // data directories mixed with partitions can't be mapped to a table
+        LOGGER.debug("{} is not a partition directory", child);
+        return false;
+      }
+      final String key = keyValue.get()[0];
+      if (depth == layout.keys.size()) {
+        layout.keys.add(key);
+      } else if (!layout.keys.get(depth).equals(key)) {
+        LOGGER.debug("Partitions of {} have different keys", directory);
+        return false;
+      }
+      final List<String> childValues = new ArrayList<>(values);
+      childValues.add(keyValue.get()[1]);
+      if (!collect(child, childValues, layout)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Optional<String[]> keyValue(String name, int depth) {
+    final Matcher matcher = KEY_VALUE.matcher(name);
+    if (matcher.matches()) {
+      return Optional.of(new String[] {matcher.group(1), matcher.group(2)});
+    }
+    if (depth < dateLevels.size() && isDateLevel(name, dateLevels.get(depth))) {
+      return Optional.of(new String[] {DATE_LEVELS.get(dateLevels.get(depth)), name});
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Goes up from the directory of the file while it looks like a partition, so that publishing
+   * any file of partitioned dataset gives the same table.
+   */
+  private String root(String directory) {
+    String root = directory;
+    while (KEY_VALUE.matcher(name(root)).matches()) {
+      root = parent(root);
+    }
+    if (dateLevels.isEmpty()) {
+      return root;
+    }
+    String candidate = root;
+    for (int level = dateLevels.size() - 1; level >= 0; level--) {
+      if (!isDateLevel(name(candidate), dateLevels.get(level))) {
+        return root;
+      }
+      candidate = parent(candidate);
+    }
+    return candidate;
+  }
+
+  /**
+   * Names partition column after the key, by the rules names of other columns follow: starting
+   * with a letter, not a reserved word and not longer than 64 characters. Directories keep
+   * their names, partitions are registered with explicit locations.
+   */
+  private String columnName(String key) {
+    final String prefixed = key.startsWith("_") ? "x" + key : key;
+    final String valid = restrictedKeywords.contains(prefixed) ? prefixed + "_" : prefixed;
+    return StringUtils.left(valid, IDENTIFIER_MAX_LEN);
+  }
+
+  private static boolean isDateLevel(String name, String level) {
+    return name.length() == level.length() && name.chars().allMatch(Character::isDigit);
+  }
+
+  private static boolean isHidden(String name) {
+    return name.startsWith("_") || name.startsWith(".");
+  }
+
+  private static String parent(String uri) {
+    final String trimmed = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+    return trimmed.substring(0, Math.max(trimmed.lastIndexOf('/'), 0));
+  }
+
+  private static String name(String uri) {
+    final String trimmed = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+    return trimmed.substring(trimmed.lastIndexOf('/') + 1);
+  }
+
+  private static String path(String uri) {
+    return URI.create(uri).getPath();
+  }
+
+  private static List<String> parseDatePattern(String datePattern) {
+    if (datePattern == null || datePattern.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<String> levels = new ArrayList<>();
+    for (String level : datePattern.split("/")) {
+      if (!DATE_LEVELS.containsKey(level)) {
+        throw new IllegalArgumentException(String.format(
+            "Unsupported date level %s, expected one of %s", level, DATE_LEVELS.keySet()));
+      }
+      levels.add(level);
+    }
+    return levels;
+  }
+
+  private static class Layout {
+    private final String databaseName;
+    private final JwtToken userIdentity;
+    private final List<String> keys = new ArrayList<>();
+    private final List<Partition> partitions = new ArrayList<>();
+
+    private Layout(String databaseName, JwtToken userIdentity) {
+      this.databaseName = databaseName;
+      this.userIdentity = userIdentity;
+    }
+  }
+}
@@ -15,28 +15,228 @@
  */
 package org.trustedanalytics.datasetpublisher.service;
 
+import com.google.common.collect.Lists;
+
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.ColumnarCopy;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.Partition;
 
 import org.springframework.stereotype.Service;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class QueryBuilder {
 
+    /**
+     * Number of partitions registered by a single statement.
+     */
+    static final int PARTITIONS_PER_STATEMENT = 100;
+
+    static final String SKIP_HEADER = "skip.header.line.count";
+
     public String createDatabase(HiveTable table) {
         return String.format("create database if not exists %s", table.databaseName);
     }
 
     public String createTable(HiveTable table) {
         return String.format("create external table if not exists %s (" +
-                table.fields.stream().map(column -> column + " string")
+                table.columns.stream().map(column -> column.name + " " + column.type)
                     .collect(Collectors.joining(",")) +
-                ") row format delimited fields terminated by ',' stored as textfile location '%s'",
-            table.getFullyQualifiedName(), table.location);
+                ")" + partitionedBy(table) + " row format delimited fields terminated by '%s' stored as textfile location '%s'" +
+                (table.format.header ? " tblproperties ('" + SKIP_HEADER + "'='1')" : ""),
+            table.getFullyQualifiedName(), delimiterLiteral(table.format.delimiter), table.location);
+    }
+
+    /**
+     * Partitions are registered explicitly, in batches, which is much cheaper than making
+     * metastore scan the whole directory tree with msck repair.
+     */
+    public List<String> addPartitions(HiveTable table) {
+        return Lists.partition(table.partitions, PARTITIONS_PER_STATEMENT).stream()
+            .map(batch -> String.format("alter table %s add if not exists ",
+                    table.getFullyQualifiedName()) +
+                batch.stream().map(partition -> partitionSpec(table, partition))
+                    .collect(Collectors.joining(" ")))
+            .collect(Collectors.toList());
+    }
+
+    public String showTable(HiveTable table) {
+        return String.format("show tables in %s like '%s'", table.databaseName, table.tableName);
+    }
+
+    public String describeTable(HiveTable table) {
+        return String.format("describe formatted %s", table.getFullyQualifiedName());
+    }
+
+    /**
+     * Brings definition of existing table in line with the table, in place. Columns appended at
+     * the end are added, any other change of columns replaces all of them; both only change
+     * metadata, data files are left as they are. Partition columns can't be changed this way
+     * and are not compared. Delimiter and header of text files are set as table properties.
+     * Delimiter of partitioned tables is left as it is, partitions keep the SerDe they were
+     * added with, so the change would apply to new partitions only.
+     * @param live definition of existing table
+     * @param table desired definition of the table
+     * @return statements to execute, empty if definitions don't differ
+     */
+    public List<String> alterTable(HiveTable live, HiveTable table) {
+        final List<String> statements = new ArrayList<>(4);
+        if (!sameColumns(live.columns, table.columns)) {
+            final boolean appended = table.columns.size() > live.columns.size()
+                && sameColumns(live.columns, table.columns.subList(0, live.columns.size()));
+            final List<Column> columns = appended
+                ? table.columns.subList(live.columns.size(), table.columns.size())
+                : table.columns;
+            statements.add(String.format("alter table %s %s columns (%s)",
+                table.getFullyQualifiedName(), appended ? "add" : "replace",
+                columns.stream().map(column -> column.name + " " + column.type)
+                    .collect(Collectors.joining(","))));
+        }
+        if (live.location != null && !Objects.equals(pathOf(live.location), table.location)) {
+            statements.add(String.format("alter table %s set location '%s'",
+                table.getFullyQualifiedName(), table.location));
+        }
+        if (live.format.delimiter != table.format.delimiter && table.partitionColumns.isEmpty()) {
+            final String delimiter = delimiterLiteral(table.format.delimiter);
+            statements.add(String.format("alter table %s set serdeproperties " +
+                    "('field.delim'='%s', 'serialization.format'='%s')",
+                table.getFullyQualifiedName(), delimiter, delimiter));
+        }
+        if (live.format.header != table.format.header) {
+            statements.add(String.format("alter table %s set tblproperties ('%s'='%d')",
+                table.getFullyQualifiedName(), SKIP_HEADER, table.format.header ? 1 : 0));
+        }
+        return statements;
+    }
+
+    public String analyzeTable(HiveTable table) {
+        return String.format("analyze table %s%s compute statistics",
+            table.getFullyQualifiedName(), partitionKeys(table));
+    }
+
+    public String analyzeColumns(HiveTable table) {
+        return String.format("analyze table %s%s compute statistics for columns",
+            table.getFullyQualifiedName(), partitionKeys(table));
     }
 
     public String dropTable(HiveTable table) {
         return String.format("drop table if exists %s", table.getFullyQualifiedName());
     }
+
+    public String showTables(String databaseName) {
+        return String.format("show tables in %s", databaseName);
+    }
+
+    public String dropDatabase(String databaseName, boolean cascade) {
+        return String.format("drop database if exists %s%s", databaseName,
+            cascade ? " cascade" : "");
+    }
+
+    /**
+     * Makes Impala load metadata of the table from scratch, needed for tables it doesn't know.
+     */
+    public String invalidateMetadata(HiveTable table) {
+        return String.format("invalidate metadata %s", table.getFullyQualifiedName());
+    }
+
+    /**
+     * Makes Impala reload metadata and data files of the table it already knows, which is much
+     * cheaper than invalidating it.
+     */
+    public String refreshTable(HiveTable table) {
+        return String.format("refresh %s", table.getFullyQualifiedName());
+    }
+
+    /**
+     * Compression is set as table property rather than for the session, which is pooled and
+     * would keep it for later statements.
+     */
+    public String createColumnarCopy(HiveTable table, ColumnarCopy copy, String compression) {
+        return String.format("create table if not exists %s stored as %s " +
+                "tblproperties ('%s'='%s', '%s'='%s') as select * from %s",
+            copy.getFullyQualifiedName(), copy.format.storedAs,
+            copy.format.compressionProperty, compression,
+            ColumnarCopy.SOURCE_PROPERTY, copy.source, table.getFullyQualifiedName());
+    }
+
+    public String showColumnarCopy(ColumnarCopy copy) {
+        return String.format("show tables in %s like '%s'", copy.databaseName, copy.tableName);
+    }
+
+    public String showColumnarCopySource(ColumnarCopy copy) {
+        return String.format("show tblproperties %s('%s')", copy.getFullyQualifiedName(),
+            ColumnarCopy.SOURCE_PROPERTY);
+    }
+
+    public String dropColumnarCopy(ColumnarCopy copy) {
+        return String.format("drop table if exists %s", copy.getFullyQualifiedName());
+    }
+
+    private static boolean sameColumns(List<Column> live, List<Column> columns) {
+        return live.size() == columns.size() && IntStream.range(0, live.size())
+            .allMatch(i -> live.get(i).name.equalsIgnoreCase(columns.get(i).name)
+                && live.get(i).type.equalsIgnoreCase(columns.get(i).type));
+    }
+
+    /**
+     * Tab and semicolon are escaped, the latter as it ends statements in Hive CLI and Beeline.
+     */
+    private static String delimiterLiteral(char delimiter) {
+        switch (delimiter) {
+            case '\t':
+                return "\\t";
+            case ';':
+                return "\\073";
+            default:
+                return String.valueOf(delimiter);
+        }
+    }
+
+    /**
+     * Metastore keeps locations as URIs, published tables have just paths.
+     */
+    private static String pathOf(String location) {
+        try {
+            final String path = URI.create(location).getPath();
+            return path.endsWith("/") && path.length() > 1
+                ? path.substring(0, path.length() - 1) : path;
+        } catch (IllegalArgumentException e) {
+            return location;
+        }
+    }
+
+    private String partitionedBy(HiveTable table) {
+        return table.partitionColumns.isEmpty() ? "" : " partitioned by (" +
+            table.partitionColumns.stream().map(column -> column.name + " " + column.type)
+                .collect(Collectors.joining(",")) + ")";
+    }
+
+    private String partitionKeys(HiveTable table) {
+        return table.partitionColumns.isEmpty() ? "" : " partition (" +
+            table.partitionColumns.stream().map(column -> column.name)
+                .collect(Collectors.joining(",")) + ")";
+    }
+
+    private String partitionSpec(HiveTable table, Partition partition) {
+        return "partition (" +
+            IntStream.range(0, table.partitionColumns.size())
+                .mapToObj(i -> table.partitionColumns.get(i).name + "=" +
+                    literal(partition.values.get(i)))
+                .collect(Collectors.joining(",")) +
+            ") location " + literal(partition.location);
+    }
+
+    /**
+     * Values and locations of partitions come from directory names, which may hold quotes.
+     */
+    private static String literal(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
 }
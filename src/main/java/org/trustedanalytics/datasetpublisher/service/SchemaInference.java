@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Infers types of columns from the first rows of the published file. Rows are parsed as they're
+ * read and only the set of types still matching each column is kept, so memory use doesn't
+ * depend on the size of the sample.
+ */
+@Component
+@Order(SchemaInference.ORDER)
+public class SchemaInference implements TableEnricher {
+
+  public static final int ORDER = 200;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SchemaInference.class);
+
+  // types in order of preference, value matching several of them gets the first one
+  private static final String[] TYPES = {"bigint", "double", "boolean", "timestamp"};
+  private static final int BIGINT = 1;
+  private static final int DOUBLE = 1 << 1;
+  private static final int BOOLEAN = 1 << 2;
+  private static final int TIMESTAMP = 1 << 3;
+  private static final int ANY = BIGINT | DOUBLE | BOOLEAN | TIMESTAMP;
+
+  private static final Pattern INTEGRAL = Pattern.compile("[-+]?\\d+");
+  private static final Pattern DECIMAL =
+      Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+  private static final Pattern TIMESTAMP_FORMAT =
+      Pattern.compile("\\d{4}-\\d{1,2}-\\d{1,2} \\d{1,2}:\\d{2}:\\d{2}(\\.\\d{1,9})?");
+  private static final String HIVE_NULL = "\\N";
+
+  private final DatasetSource datasetSource;
+  private final Config.Inference config;
+
+  @Autowired
+  public SchemaInference(DatasetSource datasetSource, Config.Inference config) {
+    this.datasetSource = datasetSource;
+    this.config = config;
+  }
+
+  @Override
+  public HiveTable enrich(HiveTable table, JwtToken userIdentity) {
+    if (!config.isEnabled() || table.sourceUri == null || table.columns.isEmpty()) {
+      return table;
+    }
+    final int[] candidates = new int[table.columns.size()];
+    Arrays.fill(candidates, ANY);
+    final boolean[] seen = new boolean[candidates.length];
+    try (InputStream in =
+             datasetSource.open(table.sourceUri, table.databaseName, userIdentity);
+         Reader reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+      sample(reader, table.format, candidates, seen);
+    } catch (IOException e) {
+      LOGGER.warn(String.format("Can't read %s, columns are left untyped", table.sourceUri), e);
+      return table;
+    }
+
+    final List<Column> columns = new ArrayList<>(candidates.length);
+    for (int i = 0; i < candidates.length; i++) {
+      columns.add(new Column(table.columns.get(i).name,
+                             seen[i] ? typeOf(candidates[i]) : Column.STRING));
+    }
+    LOGGER.debug("Inferred columns of {}: {}", table.getFullyQualifiedName(), columns);
+    return table.withColumns(columns);
+  }
+
+  /**
+   * Parses delimited records, with optional double quoted fields. Header is skipped only if the
+   * table skips it too, otherwise Hive reads it as data and so it's sampled as well.
+   */
+  private void sample(Reader reader, TextFormat format, int[] candidates, boolean[] seen)
+      throws IOException {
+    final char delimiter = format.delimiter;
+    final StringBuilder field = new StringBuilder();
+    boolean header = format.header;
+    boolean quoted = false;
+    int records = 0;
+    int column = 0;
+    int recordLength = 0;
+    int c;
+    while ((c = reader.read()) != -1) {
+      if (++recordLength > config.getMaxRecordLength()) {
+        // sample is cut at suspiciously long record, types are inferred from preceding ones
+        return;
+      }
+      if (quoted) {
+        if (c != '"') {
+          field.append((char) c);
+          continue;
+        }
+        final int next = reader.read();
+        if (next == '"') {
+          field.append('"');
+          continue;
+        }
+        quoted = false;
+        if (next == -1) {
+          break;
+        }
+        c = next;
+      }
+      if (c == '"' && field.length() == 0) {
+        quoted = true;
+      } else if (c == delimiter || c == '\n') {
+        if (!header && column < candidates.length) {
+          observe(field, column, candidates, seen);
+        }
+        field.setLength(0);
+        column++;
+        if (c == '\n') {
+          if (!header && ++records >= config.getSampleRows()) {
+            return;
+          }
+          header = false;
+          column = 0;
+          recordLength = 0;
+        }
+      } else if (c != '\r') {
+        field.append((char) c);
+      }
+    }
+    if (!header && column < candidates.length && (field.length() > 0 || column > 0)) {
+      observe(field, column, candidates, seen);
+    }
+  }
+
+  private static void observe(CharSequence field, int column, int[] candidates, boolean[] seen) {
+    final String value = field.toString();
+    if (value.isEmpty() || HIVE_NULL.equals(value)) {
+      return;
+    }
+    seen[column] = true;
+    candidates[column] &= typesOf(value);
+  }
+
+  private static int typesOf(String value) {
+    int types = 0;
+    if (INTEGRAL.matcher(value).matches() && fitsLong(value)) {
+      types |= BIGINT;
+    }
+    if (DECIMAL.matcher(value).matches()) {
+      types |= DOUBLE;
+    }
+    if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+      types |= BOOLEAN;
+    }
+    if (TIMESTAMP_FORMAT.matcher(value).matches()) {
+      types |= TIMESTAMP;
+    }
+    return types;
+  }
+
+  private static boolean fitsLong(String value) {
+    try {
+      Long.parseLong(value);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static String typeOf(int candidates) {
+    for (int i = 0; i < TYPES.length; i++) {
+      if ((candidates & (1 << i)) != 0) {
+        return TYPES[i];
+      }
+    }
+    return Column.STRING;
+  }
+}
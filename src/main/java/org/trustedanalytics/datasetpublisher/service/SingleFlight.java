@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Runs operations on the same key one after another, in order of arrival. Operation arriving
+ * while an equal one is the last in line for the key doesn't run on its own, but waits for that
+ * one and shares its outcome.
+ */
+public class SingleFlight {
+
+  private final Map<String, Flight> lastFlights = new HashMap<>();
+
+  /**
+   * Runs the operation, or joins equal one which is in line.
+   * @param key key of the operation, operations of different keys are independent
+   * @param fingerprint identifies operations which may share outcome
+   * @param operation operation to run
+   */
+  public void run(String key, Object fingerprint, Runnable operation) {
+    final Flight flight;
+    final Flight predecessor;
+    synchronized (lastFlights) {
+      final Flight last = lastFlights.get(key);
+      if (last != null && last.fingerprint.equals(fingerprint)) {
+        flight = null;
+        predecessor = last;
+      } else {
+        flight = new Flight(fingerprint);
+        predecessor = last;
+        lastFlights.put(key, flight);
+      }
+    }
+    if (flight == null) {
+      join(predecessor);
+      return;
+    }
+
+    try {
+      if (predecessor != null) {
+        // outcome of the previous operation doesn't matter, only its completion does
+        predecessor.done.handle((result, failure) -> null).join();
+      }
+      operation.run();
+      flight.done.complete(null);
+    } catch (RuntimeException | Error e) {
+      flight.done.completeExceptionally(e);
+      throw e;
+    } finally {
+      synchronized (lastFlights) {
+        lastFlights.remove(key, flight);
+      }
+    }
+  }
+
+  private static void join(Flight flight) {
+    try {
+      flight.done.join();
+    } catch (CompletionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw (RuntimeException) cause;
+    }
+  }
+
+  private static final class Flight {
+    private final Object fingerprint;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private Flight(Object fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+}
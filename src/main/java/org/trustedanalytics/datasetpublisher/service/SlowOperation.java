@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Operation on a table which took longer than the threshold, with durations of its stages.
+ */
+@AllArgsConstructor
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SlowOperation {
+
+  public enum Outcome {
+    SUCCEEDED, FAILED
+  }
+
+  @JsonProperty("finished_at")
+  private final String finishedAt;
+
+  private final HiveMetrics.Operation operation;
+
+  private final String table;
+
+  private final int columns;
+
+  private final Outcome outcome;
+
+  private final String error;
+
+  @JsonProperty("total_ms")
+  private final long totalMillis;
+
+  @JsonProperty("new_connection")
+  private final boolean newConnection;
+
+  @JsonProperty("stages_ms")
+  private final Map<String, Long> stageMillis;
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.collect.EvictingQueue;
+import com.google.common.collect.Lists;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Logs operations on tables which took longer than the threshold and keeps the most recent of
+ * them in memory.
+ */
+@Component
+public class SlowOperationLog {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SlowOperationLog.class);
+  private final Config.SlowLog config;
+  private final EvictingQueue<SlowOperation> recent;
+
+  @Autowired
+  public SlowOperationLog(Config.SlowLog config) {
+    this.config = config;
+    this.recent = EvictingQueue.create(config.getCapacity());
+  }
+
+  /**
+   * Records the operation if it was slow.
+   * @param operation operation
+   * @param table table the operation was done on
+   * @param trace trace of the operation
+   * @param failure failure of the operation, null if it succeeded
+   */
+  public void record(HiveMetrics.Operation operation, HiveTable table, OperationTrace trace,
+                     Exception failure) {
+    final long totalMillis = TimeUnit.NANOSECONDS.toMillis(trace.elapsedNanos());
+    if (totalMillis < config.getThresholdMillis()) {
+      return;
+    }
+    final Map<String, Long> stageMillis = new LinkedHashMap<>();
+    trace.getStages().forEach(
+        (stage, nanos) -> stageMillis.put(stage, TimeUnit.NANOSECONDS.toMillis(nanos)));
+    final SlowOperation slow = new SlowOperation(
+        Instant.now().toString(), operation, table.getFullyQualifiedName(), table.columns.size(),
+        failure == null ? SlowOperation.Outcome.SUCCEEDED : SlowOperation.Outcome.FAILED,
+        failure == null ? null : failure.getMessage(), totalMillis, trace.isNewConnection(),
+        stageMillis);
+
+    LOGGER.warn("slow_operation operation={} table={} columns={} outcome={} total_ms={} " +
+                "new_connection={} {}",
+                operation, slow.getTable(), slow.getColumns(), slow.getOutcome(), totalMillis,
+                slow.isNewConnection(), stageMillis.entrySet().stream()
+                    .map(stage -> stage.getKey() + "_ms=" + stage.getValue())
+                    .collect(Collectors.joining(" ")));
+    synchronized (recent) {
+      recent.add(slow);
+    }
+  }
+
+  /**
+   * @return slow operations, the most recent first
+   */
+  public List<SlowOperation> findRecent() {
+    synchronized (recent) {
+      return Lists.reverse(Lists.newArrayList(recent));
+    }
+  }
+}
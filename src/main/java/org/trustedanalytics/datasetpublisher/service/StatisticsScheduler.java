@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.STATISTICS;
+import static org.trustedanalytics.datasetpublisher.service.HiveSessions.execute;
+
+/**
+ * Computes statistics of published tables in the background, so that query planners have
+ * something to work with. There's at most one pending analysis of a table, and tables which have
+ * been published or requested most recently are analyzed first.
+ *
+ * Analysis runs as the user who has published or requested the table last, with the token which
+ * expires latest. Analysis whose token has expired while it was waiting is skipped; it's scheduled
+ * again when the table is published again.
+ */
+@Component
+public class StatisticsScheduler implements HiveTableListener, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsScheduler.class);
+  private final QueryBuilder queryBuilder;
+  private final HiveSessions sessions;
+  private final Config.Statistics config;
+  private final UserCredentials credentials;
+  private final ExecutorService executor;
+  private final Clock clock;
+  private final Map<String, Task> pending = new HashMap<>();
+  private final Queue<Task> queue =
+      new PriorityQueue<>(Comparator.comparingLong((Task task) -> task.priority).reversed());
+  private long sequence;
+
+  @Autowired
+  public StatisticsScheduler(QueryBuilder queryBuilder, HiveSessions sessions,
+                             Config.Statistics config, UserCredentials credentials) {
+    this(queryBuilder, sessions, config, credentials, Executors.newFixedThreadPool(
+        config.getThreads(),
+        new ThreadFactoryBuilder().setNameFormat("statistics-%d").setDaemon(true).build()),
+        Clock.systemUTC());
+  }
+
+  StatisticsScheduler(QueryBuilder queryBuilder, HiveSessions sessions, Config.Statistics config,
+                      UserCredentials credentials, ExecutorService executor, Clock clock) {
+    this.queryBuilder = queryBuilder;
+    this.sessions = sessions;
+    this.config = config;
+    this.credentials = credentials;
+    this.executor = executor;
+    this.clock = clock;
+  }
+
+  @Override
+  public void tableCreated(HiveTable table, JwtToken userIdentity) {
+    if (!config.isEnabled()) {
+      return;
+    }
+    final JwtToken identity = credentials.identityOf(userIdentity.getRawToken());
+    final long expiresAt = credentials.expiresAt(identity);
+    synchronized (this) {
+      final Task task = pending.get(table.getFullyQualifiedName());
+      if (task != null) {
+        // analysis of the table is already waiting, it just gets the latest definition
+        queue.remove(task);
+        task.table = table;
+        task.refresh(identity, expiresAt);
+        task.priority = ++sequence;
+        queue.add(task);
+        return;
+      }
+      if (pending.size() >= config.getMaxPending()) {
+        LOGGER.warn("Too many pending analyses, statistics of {} won't be computed",
+                    table.getFullyQualifiedName());
+        return;
+      }
+      final Task added = new Task(table, identity, expiresAt, ++sequence);
+      pending.put(table.getFullyQualifiedName(), added);
+      queue.add(added);
+    }
+    executor.execute(this::analyzeNext);
+  }
+
+  @Override
+  public void tableRequested(HiveTable table, JwtToken userIdentity) {
+    final JwtToken identity = credentials.identityOf(userIdentity.getRawToken());
+    final long expiresAt = credentials.expiresAt(identity);
+    synchronized (this) {
+      final Task task = pending.get(table.getFullyQualifiedName());
+      if (task != null) {
+        queue.remove(task);
+        task.refresh(identity, expiresAt);
+        task.priority = ++sequence;
+        queue.add(task);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void tableDropped(HiveTable table, JwtToken userIdentity) {
+    final Task task = pending.remove(table.getFullyQualifiedName());
+    if (task != null) {
+      queue.remove(task);
+    }
+  }
+
+  @Override
+  public synchronized void databaseDropped(String databaseName, JwtToken userIdentity) {
+    pending.values().removeIf(task -> {
+      final boolean dropped = task.table.databaseName.equals(databaseName);
+      if (dropped) {
+        queue.remove(task);
+      }
+      return dropped;
+    });
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  private void analyzeNext() {
+    final Task task;
+    synchronized (this) {
+      task = queue.poll();
+      if (task == null) {
+        // task has been dropped together with its table
+        return;
+      }
+      pending.remove(task.table.getFullyQualifiedName());
+    }
+    if (clock.millis() >= task.expiresAt) {
+      LOGGER.warn("Token of the user has expired, statistics of {} won't be computed",
+                  task.table.getFullyQualifiedName());
+      return;
+    }
+    try {
+      sessions.run(task.identity, STATISTICS, task.table.databaseName, stm -> {
+        execute(stm, queryBuilder.analyzeTable(task.table));
+        if (config.isColumns()) {
+          execute(stm, queryBuilder.analyzeColumns(task.table));
+        }
+      });
+      LOGGER.info("Statistics of {} computed", task.table.getFullyQualifiedName());
+    } catch (RuntimeException e) {
+      LOGGER.error(
+          String.format("Can't compute statistics of %s", task.table.getFullyQualifiedName()), e);
+    }
+  }
+
+  private static class Task {
+    private HiveTable table;
+    private JwtToken identity;
+    private long expiresAt;
+    private long priority;
+
+    private Task(HiveTable table, JwtToken identity, long expiresAt, long priority) {
+      this.table = table;
+      this.identity = identity;
+      this.expiresAt = expiresAt;
+      this.priority = priority;
+    }
+
+    /**
+     * Takes the identity if its token expires later than the one the task has.
+     */
+    private void refresh(JwtToken candidate, long candidateExpiresAt) {
+      if (candidateExpiresAt >= expiresAt) {
+        identity = candidate;
+        expiresAt = candidateExpiresAt;
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads definition of existing table from output of {@code describe formatted}: its columns,
+ * listed first, and its location and text format, listed among detailed table information.
+ */
+final class TableDescription {
+
+  private static final String PARTITION_SECTION = "# Partition Information";
+  private static final String DETAILS_SECTION = "# Detailed Table Information";
+  private static final String LOCATION = "Location:";
+  private static final String FIELD_DELIMITER = "field.delim";
+
+  private TableDescription() {
+  }
+
+  /**
+   * @param table table which has been described
+   * @param rs output of {@code describe formatted}
+   * @return definition of the existing table, with location as kept by metastore
+   */
+  static HiveTable read(HiveTable table, ResultSet rs) throws SQLException {
+    final List<Column> columns = new ArrayList<>();
+    String location = null;
+    char delimiter = TextFormat.DEFAULT.delimiter;
+    boolean header = false;
+    boolean inColumns = true;
+    boolean inDetails = false;
+    while (rs.next()) {
+      final String name = trim(rs.getString(1));
+      if (name.startsWith(PARTITION_SECTION) || name.startsWith(DETAILS_SECTION)) {
+        inColumns = false;
+        inDetails = name.startsWith(DETAILS_SECTION);
+      } else if (inColumns && !name.isEmpty() && !name.startsWith("#")) {
+        columns.add(new Column(name, trim(rs.getString(2))));
+      } else if (!inColumns && name.equals(LOCATION)) {
+        location = trim(rs.getString(2));
+      } else if (inDetails && name.isEmpty()) {
+        // table and storage parameters are listed as key and value in the next two columns
+        final String key = trim(rs.getString(2));
+        if (key.equals(FIELD_DELIMITER)) {
+          delimiter = delimiterOf(rs.getString(3), delimiter);
+        } else if (key.equals(QueryBuilder.SKIP_HEADER)) {
+          header = !trim(rs.getString(3)).equals("0");
+        }
+      }
+    }
+    return new HiveTable(table.databaseName, table.tableName, Collections.emptyList(), location)
+        .withColumns(columns)
+        .withFormat(new TextFormat(delimiter, header, null));
+  }
+
+  /**
+   * Values are padded with spaces and may be escaped, so tab is either itself or {@code \t}.
+   */
+  private static char delimiterOf(String value, char otherwise) {
+    if (value == null || value.isEmpty()) {
+      return otherwise;
+    }
+    return value.startsWith("\\t") ? '\t' : value.charAt(0);
+  }
+
+  private static String trim(String value) {
+    return value == null ? "" : value.trim();
+  }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+/**
+ * Stage refining table definition, e.g. with facts learned from the data, before the table is
+ * created. Enrichers are applied in their {@link org.springframework.core.annotation.Order}.
+ */
+@FunctionalInterface
+public interface TableEnricher {
+
+  /**
+   * @param table table mapped from dataset metadata
+   * @param userIdentity user publishing the table, on behalf of whom the data is read
+   * @return refined table, or the same table if there's nothing to add
+   */
+  HiveTable enrich(HiveTable table, JwtToken userIdentity);
+}
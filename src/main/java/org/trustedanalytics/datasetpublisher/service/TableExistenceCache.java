@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of tables known to exist in Hive with given columns and location, used to skip
+ * re-publishing of unchanged tables.
+ *
+ * Table is considered known only to users who have already published it, so that cache never
+ * answers in place of Hive authorization.
+ */
+@Component
+public class TableExistenceCache {
+
+  private final boolean enabled;
+  private final Cache<String, Entry> tables;
+
+  @Autowired
+  public TableExistenceCache(Config.ExistenceCache config) {
+    this.enabled = config.isEnabled();
+    this.tables = CacheBuilder.newBuilder()
+        .maximumSize(config.getMaxSize())
+        .expireAfterWrite(config.getTtlMillis(), TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Checks if table with the same columns and location has already been created by the user.
+   * @param table hive table
+   * @param userIdentity user identity
+   * @return true if table is known to exist
+   */
+  public boolean contains(HiveTable table, JwtToken userIdentity) {
+    final Entry entry = tables.getIfPresent(table.getFullyQualifiedName());
+    return entry != null
+           && entry.signature.equals(table.getSignature())
+           && entry.users.contains(Objects.toString(userIdentity.getUserId()));
+  }
+
+  /**
+   * Records that table has been created by the user.
+   * @param table hive table
+   * @param userIdentity user identity
+   */
+  public void add(HiveTable table, JwtToken userIdentity) {
+    if (enabled) {
+      final Entry entry =
+          new Entry(table.getSignature(), Objects.toString(userIdentity.getUserId()));
+      tables.asMap().merge(table.getFullyQualifiedName(), entry, Entry::merge);
+    }
+  }
+
+  /**
+   * Forgets table, e.g. when it's dropped.
+   * @param table hive table
+   */
+  public void invalidate(HiveTable table) {
+    tables.invalidate(table.getFullyQualifiedName());
+  }
+
+  /**
+   * Forgets tables of the database, e.g. when it's dropped.
+   * @param databaseName database name
+   */
+  public void invalidateDatabase(String databaseName) {
+    final String prefix = databaseName + ".";
+    tables.asMap().keySet().removeIf(name -> name.startsWith(prefix));
+  }
+
+  /**
+   * Forgets all tables.
+   */
+  public void invalidateAll() {
+    tables.invalidateAll();
+  }
+
+  private static final class Entry {
+
+    private final HiveTable.Signature signature;
+    private final ImmutableSet<String> users;
+
+    private Entry(HiveTable.Signature signature, String user) {
+      this(signature, ImmutableSet.of(user));
+    }
+
+    private Entry(HiveTable.Signature signature, ImmutableSet<String> users) {
+      this.signature = signature;
+      this.users = users;
+    }
+
+    private Entry merge(Entry other) {
+      if (!signature.equals(other.signature)) {
+        return other;
+      }
+      return new Entry(signature,
+                       ImmutableSet.<String>builder().addAll(users).addAll(other.users).build());
+    }
+  }
+}
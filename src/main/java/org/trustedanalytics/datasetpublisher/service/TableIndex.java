@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import static org.trustedanalytics.datasetpublisher.service.HiveMetrics.Operation.INDEX;
+
+/**
+ * In-memory index of tables by database, kept up to date by tables created and dropped by
+ * {@link HiveService}. Databases are reconciled with the metastore in the background, one at a
+ * time, least recently reconciled first, as the user who has last used them.
+ *
+ * Tables of a database are only listed to users who are known to have access to it, i.e. who
+ * have published to it or whose own reconciliation of it has succeeded.
+ */
+@Component
+public class TableIndex implements HiveTableListener, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TableIndex.class);
+  private final QueryBuilder queryBuilder;
+  private final HiveSessions sessions;
+  private final Config.Index config;
+  private final UserCredentials credentials;
+  private final ScheduledExecutorService executor;
+  private final Clock clock;
+  private final ConcurrentMap<String, Database> databases = new ConcurrentHashMap<>();
+  // users' reconciliations waiting to be run, so that repeated requests don't queue more
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  @Autowired
+  public TableIndex(QueryBuilder queryBuilder, HiveSessions sessions, Config.Index config,
+                    UserCredentials credentials) {
+    this(queryBuilder, sessions, config, credentials, Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("table-index-%d").setDaemon(true).build()),
+         Clock.systemUTC());
+    if (config.getReconcileIntervalMillis() > 0) {
+      executor.scheduleWithFixedDelay(this::reconcileNext, config.getReconcileIntervalMillis(),
+                                      config.getReconcileIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  TableIndex(QueryBuilder queryBuilder, HiveSessions sessions, Config.Index config,
+             UserCredentials credentials, ScheduledExecutorService executor, Clock clock) {
+    this.queryBuilder = queryBuilder;
+    this.sessions = sessions;
+    this.config = config;
+    this.credentials = credentials;
+    this.executor = executor;
+    this.clock = clock;
+  }
+
+  /**
+   * Finds page of tables of the database, ordered by name. Database which the user isn't known
+   * to have access to is reconciled in the background as the user, and is empty until then.
+   * @param databaseName database name
+   * @param offset number of tables to skip
+   * @param limit max number of tables returned
+   * @param userIdentity user identity
+   * @return page of tables
+   */
+  public Page find(String databaseName, int offset, int limit, JwtToken userIdentity) {
+    final Database database = databases.get(databaseName);
+    if (database == null || !database.users.contains(userIdentity.getUserId())) {
+      final String rawToken = userIdentity.getRawToken();
+      final String key = databaseName + "/" + userIdentity.getUserId();
+      if (pending.add(key)) {
+        executor.execute(() -> {
+          pending.remove(key);
+          reconcile(databaseName, rawToken);
+        });
+      }
+      return new Page(Collections.emptyList(), 0, false);
+    }
+    final List<HiveTable> tables = database.tables.values().stream()
+        .skip(offset)
+        .limit(limit)
+        .map(entry -> entry.table)
+        .collect(Collectors.toList());
+    return new Page(tables, database.tables.size(), database.reconciledAt > 0);
+  }
+
+  @Override
+  public void tableCreated(HiveTable table, JwtToken userIdentity) {
+    database(table.databaseName, userIdentity).tables
+        .put(table.tableName, new Entry(table, clock.millis()));
+  }
+
+  @Override
+  public void tableRequested(HiveTable table, JwtToken userIdentity) {
+    // table is known to exist, but its definition may be new to the index
+    database(table.databaseName, userIdentity).tables
+        .putIfAbsent(table.tableName, new Entry(table, clock.millis()));
+  }
+
+  @Override
+  public void tableDropped(HiveTable table, JwtToken userIdentity) {
+    final Database database = database(table.databaseName, userIdentity);
+    database.droppedAt = clock.millis();
+    database.tables.remove(table.tableName);
+  }
+
+  @Override
+  public void databaseDropped(String databaseName, JwtToken userIdentity) {
+    databases.remove(databaseName);
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Reconciles database which hasn't been reconciled for the longest time, as long as there's a
+   * user identity which hasn't expired yet to do it with.
+   */
+  void reconcileNext() {
+    final long now = clock.millis();
+    databases.entrySet().stream()
+        .filter(database -> database.getValue().identityExpiresAt > now)
+        .min(Comparator.comparingLong(database -> database.getValue().reconciledAt))
+        .ifPresent(database -> reconcile(database.getKey(), database.getValue().rawToken));
+  }
+
+  private void reconcile(String databaseName, String rawToken) {
+    final JwtToken identity = new TapOauthToken(rawToken);
+    final long start = clock.millis();
+    final Set<String> names = new HashSet<>();
+    try {
+      sessions.run(identity, INDEX, databaseName, stm -> {
+        try (ResultSet rs = stm.executeQuery(queryBuilder.showTables(databaseName))) {
+          while (rs.next()) {
+            names.add(rs.getString(1));
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      LOGGER.warn(String.format("Can't reconcile tables of %s", databaseName), e);
+      // try other databases first next time
+      Optional.ofNullable(databases.get(databaseName))
+          .ifPresent(database -> database.reconciledAt = start);
+      return;
+    }
+    final Database database = database(databaseName, identity);
+    // listing may still have a table dropped in the meantime, it's added next time
+    if (database.droppedAt < start) {
+      for (String name : names) {
+        // tables created outside of the service are known by name only
+        database.tables.putIfAbsent(name,
+            new Entry(new HiveTable(databaseName, name, Collections.emptyList(), null), start));
+      }
+    }
+    // tables indexed while listing was running may not be listed yet
+    database.tables.values().removeIf(
+        entry -> entry.indexedAt < start && !names.contains(entry.table.tableName));
+    database.reconciledAt = start;
+  }
+
+  private Database database(String databaseName, JwtToken userIdentity) {
+    final Database database = databases.computeIfAbsent(databaseName, name -> new Database());
+    database.users.add(userIdentity.getUserId());
+    final String rawToken = userIdentity.getRawToken();
+    if (!rawToken.equals(database.rawToken)) {
+      database.rawToken = rawToken;
+      database.identityExpiresAt = credentials.expiresAt(userIdentity);
+    }
+    return database;
+  }
+
+  /**
+   * Page of tables of a database.
+   */
+  @AllArgsConstructor
+  @Getter
+  public static class Page {
+
+    private final List<HiveTable> tables;
+
+    private final int total;
+
+    /**
+     * Whether tables have been reconciled with metastore at least once.
+     */
+    private final boolean reconciled;
+  }
+
+  private static final class Database {
+    private final ConcurrentSkipListMap<String, Entry> tables = new ConcurrentSkipListMap<>();
+    private final Set<String> users = ConcurrentHashMap.newKeySet();
+    private volatile long droppedAt;
+    private volatile String rawToken;
+    private volatile long identityExpiresAt;
+    private volatile long reconciledAt;
+  }
+
+  private static final class Entry {
+    private final HiveTable table;
+    private final long indexedAt;
+
+    private Entry(HiveTable table, long indexedAt) {
+      this.table = table;
+      this.indexedAt = indexedAt;
+    }
+  }
+}
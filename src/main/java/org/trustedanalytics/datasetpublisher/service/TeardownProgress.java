@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of teardown of an organization database, updated while tables are being dropped.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TeardownProgress {
+
+  private final String database;
+  private volatile Integer tables;
+  private final AtomicInteger dropped = new AtomicInteger();
+  private final Map<String, String> failed = Collections.synchronizedMap(new TreeMap<>());
+
+  public TeardownProgress(String database) {
+    this.database = database;
+  }
+
+  public String getDatabase() {
+    return database;
+  }
+
+  /**
+   * @return number of tables to drop, null until tables have been listed
+   */
+  public Integer getTables() {
+    return tables;
+  }
+
+  public int getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * @return errors of tables which couldn't be dropped, by table name
+   */
+  public Map<String, String> getFailed() {
+    synchronized (failed) {
+      return new TreeMap<>(failed);
+    }
+  }
+
+  void listed(int tables) {
+    this.tables = tables;
+  }
+
+  void dropped(int tables) {
+    dropped.addAndGet(tables);
+  }
+
+  void failed(String table, Exception cause) {
+    failed.put(table, cause.getMessage());
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.io.IOException;
+
+/**
+ * Cache of user identities by their raw token, so that requests carrying the same token share
+ * one identity, with claims decoded once: subject and expiry of the token are kept next to it and
+ * components which need the expiry get it from here instead of decoding the token again.
+ *
+ * The service holds no refresh tokens, so an identity can't be refreshed before it expires;
+ * users' next tokens get identities of their own, and pooled Hive connections are retired ahead
+ * of expiry of the token they were opened with.
+ */
+@Component
+public class UserCredentials {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UserCredentials.class);
+  private final Cache<String, Credential> credentials;
+
+  @Autowired
+  public UserCredentials(Config.Credentials config) {
+    this.credentials = CacheBuilder.newBuilder()
+        .maximumSize(config.getMaxTokens())
+        .build();
+  }
+
+  /**
+   * Finds identity of the user the token was issued to.
+   * @param rawToken encoded token of the request
+   * @return user identity, shared by requests with the same token
+   */
+  public JwtToken identityOf(String rawToken) {
+    final Credential cached = rawToken == null ? null : credentials.getIfPresent(rawToken);
+    if (cached != null) {
+      return cached.token;
+    }
+    final Credential credential = credentialOf(rawToken);
+    if (credential.subject != null) {
+      credentials.put(rawToken, credential);
+    }
+    return credential.token;
+  }
+
+  /**
+   * Reads expiration time of the token, without decoding it again when it's been cached.
+   * @param token user identity
+   * @return expiration time in epoch millis, {@link Long#MAX_VALUE} when token carries no expiry
+   */
+  public long expiresAt(JwtToken token) {
+    final String rawToken = token.getRawToken();
+    final Credential cached = rawToken == null ? null : credentials.getIfPresent(rawToken);
+    return cached != null ? cached.expiresAt : JwtTokens.expiresAt(token);
+  }
+
+  private static Credential credentialOf(String rawToken) {
+    final TapOauthToken token = new TapOauthToken(rawToken);
+    final JsonNode claims;
+    try {
+      claims = JwtTokens.claims(rawToken);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.debug("Can't read claims of user token", e);
+      return new Credential(token, null, Long.MAX_VALUE);
+    }
+    return new Credential(token, JwtTokens.subject(claims), JwtTokens.expiresAt(claims));
+  }
+
+  private static final class Credential {
+    private final JwtToken token;
+    private final String subject;
+    private final long expiresAt;
+
+    private Credential(JwtToken token, String subject, long expiresAt) {
+      this.token = token;
+      this.subject = subject;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.service.SlowOperation;
+import org.trustedanalytics.datasetpublisher.service.SlowOperationLog;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.util.Collections;
+import java.util.List;
+
+public class AdminControllerTest {
+
+    private SlowOperationLog slowLog;
+    private JwtToken userIdentity;
+    private AdminController sut;
+
+    @Before
+    public void setUp() {
+        slowLog = mock(SlowOperationLog.class);
+        userIdentity = mock(JwtToken.class);
+        when(slowLog.findRecent()).thenReturn(Collections.emptyList());
+        sut = new AdminController(slowLog, new Config.SlowLog(), userIdentity);
+    }
+
+    @Test
+    public void testGetSlowOperations_admin_operationsReturned() {
+        // given
+        givenClaims("{\"user_id\":\"alice\",\"scope\":[\"openid\",\"console.admin\"]}");
+
+        // when
+        final ResponseEntity<List<SlowOperation>> response = sut.getSlowOperations();
+
+        // then
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        verify(slowLog).findRecent();
+    }
+
+    @Test
+    public void testGetSlowOperations_notAdmin_forbidden() {
+        // given
+        givenClaims("{\"user_id\":\"alice\",\"scope\":[\"openid\"]}");
+
+        // when
+        final ResponseEntity<List<SlowOperation>> response = sut.getSlowOperations();
+
+        // then
+        assertThat(response.getStatusCode(), is(HttpStatus.FORBIDDEN));
+        verify(slowLog, never()).findRecent();
+    }
+
+    @Test
+    public void testGetSlowOperations_unreadableToken_forbidden() {
+        // given
+        when(userIdentity.getRawToken()).thenReturn("not a token");
+
+        // when
+        final ResponseEntity<List<SlowOperation>> response = sut.getSlowOperations();
+
+        // then
+        assertThat(response.getStatusCode(), is(HttpStatus.FORBIDDEN));
+    }
+
+    private void givenClaims(String claims) {
+        when(userIdentity.getRawToken())
+            .thenReturn(JwtHelper.encode(claims, new MacSigner("secret")).getEncoded());
+    }
+}
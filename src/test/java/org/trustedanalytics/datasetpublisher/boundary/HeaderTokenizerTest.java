@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+public class HeaderTokenizerTest {
+
+    @Test
+    public void testRead_quotedFields() throws IOException {
+        // when
+        final List<String> fields = read("a,\"b,c\",\"d \"\"e\"\"\",\"f\ng\"");
+
+        // then
+        assertThat(fields, contains("a", "b,c", "d \"e\"", "f\ng"));
+    }
+
+    @Test
+    public void testRead_otherDelimiter_splitWithIt() throws IOException {
+        // when
+        final List<String> tabs =
+            HeaderTokenizer.read(new StringReader("a,b\tc\t\"d\te\""), '\t', 100, 1000);
+        final List<String> semicolons =
+            HeaderTokenizer.read(new StringReader("a;b;\"c;d\",e"), ';', 100, 1000);
+
+        // then
+        assertThat(tabs, contains("a,b", "c", "d\te"));
+        assertThat(semicolons, contains("a", "b", "c;d,e"));
+    }
+
+    @Test
+    public void testRead_commaHeaderWithOtherDelimiters_splitWithComma() throws IOException {
+        // when
+        final List<String> fields = read("a;b;c,d|e|f,g");
+
+        // then
+        assertThat(fields, contains("a;b;c", "d|e|f", "g"));
+    }
+
+    @Test
+    public void testRead_onlyFirstRecord() throws IOException {
+        // when
+        final List<String> fields = read("\uFEFFa,b\r\n1,2\n3,4");
+
+        // then
+        assertThat(fields, contains("a", "b"));
+    }
+
+    @Test
+    public void testRead_trailingEmptyFields_dropped() throws IOException {
+        // when
+        final List<String> fields = read("a,,b,,\"\",,");
+
+        // then
+        assertThat(fields, contains("a", "", "b", "", ""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRead_tooManyColumns_rejected() throws IOException {
+        HeaderTokenizer.read(new StringReader("a,b,c"), ',', 2, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRead_tooLong_rejected() throws IOException {
+        HeaderTokenizer.read(new StringReader("abc,def"), ',', 10, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRead_unterminatedQuote_rejected() throws IOException {
+        read("a,\"b\nc,d");
+    }
+
+    private static List<String> read(String text) throws IOException {
+        return HeaderTokenizer.read(new StringReader(text), ',', 100, 1000);
+    }
+}
@@ -15,23 +15,73 @@
  */
 package org.trustedanalytics.datasetpublisher.boundary;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.aop.scope.ScopedObject;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.ColumnarCopy;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.service.ColumnarMaterializer;
+import org.trustedanalytics.datasetpublisher.service.HiveMetrics;
 import org.trustedanalytics.datasetpublisher.service.HiveService;
+import org.trustedanalytics.datasetpublisher.service.HiveUnavailableException;
+import org.trustedanalytics.datasetpublisher.service.Job;
+import org.trustedanalytics.datasetpublisher.service.JobService;
+import org.trustedanalytics.datasetpublisher.service.TableIndex;
+import org.trustedanalytics.datasetpublisher.service.TeardownProgress;
 import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.servlet.ServletInputStream;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HiveControllerTest {
@@ -44,6 +94,12 @@ public class HiveControllerTest {
     @Mock
     private Function<Metadata, HiveTable> metadataMapper;
 
+    @Mock
+    private JobService jobService;
+
+    @Mock
+    private ColumnarMaterializer columnarMaterializer;
+
     @Mock
     private HiveTable hiveTable;
 
@@ -56,6 +112,9 @@ public class HiveControllerTest {
     @Before
     public void setUp() {
         when(metadataMapper.apply(any())).thenReturn(hiveTable);
+        when(columnarMaterializer.findReady(any())).thenReturn(Optional.empty());
+        when(userIdentity.getRawToken()).thenReturn(
+            JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
 
         hue = new Config.Hue();
         hue.setUrl("http://hue.example.com");
@@ -68,25 +127,121 @@ public class HiveControllerTest {
             .withHue(hue)
             .withArcadia(arcadia)
             .withMetadataMapper(metadataMapper)
-            .withHive(hiveService).asWho(userIdentity).build();
+            .withHive(hiveService)
+            .withJobs(jobService)
+            .withColumnar(columnarMaterializer).asWho(userIdentity).build();
     }
 
     @Test
     public void test_createTable_createTableAndSendBackLinks() {
-        CreateTableResponse result = sut.createTable(new Metadata());
+        CreateTableResponse result =
+            (CreateTableResponse) sut.createTable(new Metadata()).getResult();
 
-        verify(hiveService).createTable(hiveTable, userIdentity);
+        verify(hiveService).createTable(eq(hiveTable), (JwtToken) any());
         Assert.assertNotNull(result.getArcadiaUrl());
         Assert.assertNotNull(result.getHueUrl());
     }
 
+    @Test
+    public void test_createTable_sameToken_sameDetachedIdentity() {
+        final ArgumentCaptor<JwtToken> identities = ArgumentCaptor.forClass(JwtToken.class);
+
+        sut.createTable(new Metadata());
+        sut.createTable(new Metadata());
+
+        verify(hiveService, times(2)).createTable(eq(hiveTable), identities.capture());
+        assertThat(identities.getAllValues().get(1),
+                   is(sameInstance(identities.getAllValues().get(0))));
+        assertThat(identities.getValue().getRawToken(), is(userIdentity.getRawToken()));
+    }
+
+    @Test
+    public void test_createTable_requestScopedIdentity_targetPassedOn() {
+        final JwtToken resolved = mock(JwtToken.class);
+        final JwtToken scoped =
+            mock(JwtToken.class, withSettings().extraInterfaces(ScopedObject.class));
+        when(((ScopedObject) scoped).getTargetObject()).thenReturn(resolved);
+        sut = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(metadataMapper)
+            .withHive(hiveService)
+            .withColumnar(columnarMaterializer)
+            .asWho(scoped).build();
+
+        sut.createTable(new Metadata());
+
+        verify(hiveService).createTable(eq(hiveTable), same(resolved));
+    }
+
+    @Test
+    public void test_createTable_resultPendingUntilHiveExecutorRunsIt() {
+        final ExecutorService hiveExecutor = mock(ExecutorService.class);
+        sut = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(metadataMapper)
+            .withHive(hiveService)
+            .withColumnar(columnarMaterializer)
+            .withHiveExecutor(hiveExecutor, new Config.Execution())
+            .asWho(userIdentity).build();
+        final ArgumentCaptor<Runnable> work = ArgumentCaptor.forClass(Runnable.class);
+
+        DeferredResult<CreateTableResponse> result = sut.createTable(new Metadata());
+
+        verify(hiveExecutor).execute(work.capture());
+        verify(hiveService, times(0)).createTable(any(), any());
+        Assert.assertFalse(result.hasResult());
+
+        work.getValue().run();
+
+        verify(hiveService).createTable(eq(hiveTable), (JwtToken) any());
+        verify(hiveService, times(0)).createTable(hiveTable, userIdentity);
+        assertThat(result.getResult(), is(instanceOf(CreateTableResponse.class)));
+    }
+
+    @Test
+    public void test_createTable_hiveFails_failureIsResult() {
+        final HiveUnavailableException failure =
+            new HiveUnavailableException("Hive is unavailable", 30);
+        doThrow(failure).when(hiveService).createTable(any(), any());
+
+        DeferredResult<CreateTableResponse> result = sut.createTable(new Metadata());
+
+        assertThat(result.getResult(), is((Object) failure));
+    }
+
+    @Test
+    public void test_hiveUnavailable_serviceUnavailableWithRetryAfter() {
+        ResponseEntity<String> result = sut.hiveUnavailableExceptionHandler(
+            new HiveUnavailableException("Hive is unavailable", 30));
+
+        assertThat(result.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(result.getHeaders().getFirst("Retry-After"), is("30"));
+    }
+
+    @Test
+    public void test_createTable_columnarCopyReady_linkToCopy() {
+        final HiveTable table = new HiveTable("db", "table", Collections.emptyList(), "loc");
+        when(metadataMapper.apply(any())).thenReturn(table);
+        when(columnarMaterializer.findReady(table)).thenReturn(Optional.of(
+            new ColumnarCopy("db", "table_parquet", "db.table", ColumnarCopy.Format.PARQUET,
+                           table.getSignature())));
+
+        CreateTableResponse result =
+            (CreateTableResponse) sut.createTable(new Metadata()).getResult();
+
+        assertThat(result.getHueUrl(), is("http://hue.example.com/db/table_parquet"));
+    }
+
     @Test
     public void test_createTable_onlyArcadiaAvailable_sendOnlyArcadiaLink() {
         hue.setAvailable(false);
 
-        CreateTableResponse result = sut.createTable(new Metadata());
+        CreateTableResponse result =
+            (CreateTableResponse) sut.createTable(new Metadata()).getResult();
 
-        verify(hiveService).createTable(hiveTable, userIdentity);
+        verify(hiveService).createTable(eq(hiveTable), (JwtToken) any());
         Assert.assertNotNull(result.getArcadiaUrl());
         Assert.assertNull(result.getHueUrl());
     }
@@ -95,9 +250,10 @@ public class HiveControllerTest {
     public void test_createTable_onlyHueAvailable_sendOnlyHueLink() {
         arcadia.setAvailable(false);
 
-        CreateTableResponse result = sut.createTable(new Metadata());
+        CreateTableResponse result =
+            (CreateTableResponse) sut.createTable(new Metadata()).getResult();
 
-        verify(hiveService).createTable(hiveTable, userIdentity);
+        verify(hiveService).createTable(eq(hiveTable), (JwtToken) any());
         Assert.assertNull(result.getArcadiaUrl());
         Assert.assertNotNull(result.getHueUrl());
     }
@@ -107,19 +263,241 @@ public class HiveControllerTest {
         hue.setAvailable(false);
         arcadia.setAvailable(false);
 
-        CreateTableResponse result = sut.createTable(new Metadata());
+        CreateTableResponse result =
+            (CreateTableResponse) sut.createTable(new Metadata()).getResult();
 
-        verify(hiveService).createTable(hiveTable, userIdentity);
+        verify(hiveService).createTable(eq(hiveTable), (JwtToken) any());
         Assert.assertNull(result.getArcadiaUrl());
         Assert.assertNull(result.getHueUrl());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_createTableAsync_queueJobWithDetachedIdentity() throws Exception {
+        when(userIdentity.getRawToken()).thenReturn(
+            JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
+        final Job job = mock(Job.class);
+        when(job.getId()).thenReturn("42");
+        final ArgumentCaptor<Callable> task = ArgumentCaptor.forClass(Callable.class);
+        when(jobService.submit(eq("alice"), task.capture())).thenReturn(job);
+
+        ResponseEntity<Job> response = sut.createTableAsync(new Metadata());
+
+        assertThat(response.getStatusCode(), is(HttpStatus.ACCEPTED));
+        assertThat(response.getHeaders().getLocation().toString(), is("/rest/jobs/42"));
+        verify(hiveService, times(0)).createTable(any(), any());
+
+        CreateTableResponse result = (CreateTableResponse) task.getValue().call();
+
+        verify(hiveService).createTable(eq(hiveTable), (JwtToken) any());
+        verify(hiveService, times(0)).createTable(hiveTable, userIdentity);
+        Assert.assertNotNull(result.getHueUrl());
+    }
+
+    @Test
+    public void test_listTables_pageOfIndexedTables() {
+        final TableIndex tableIndex = mock(TableIndex.class);
+        final HiveTable table = new HiveTable("db", "table", Arrays.asList("id"), "/loc");
+        when(tableIndex.find("cccccf34_f597", 10, 5, userIdentity)).thenReturn(
+            new TableIndex.Page(Collections.singletonList(table), 11, true));
+        sut = HiveController.Builder.create()
+            .withIndex(tableIndex, new Config.Index())
+            .asWho(userIdentity).build();
+
+        TableListResponse result = sut.listTables("cccccf34-f597", 10, 5);
+
+        assertThat(result.getTotal(), is(11));
+        assertThat(result.isReconciled(), is(true));
+        assertThat(result.getTables().get(0).getName(), is("table"));
+        assertThat(result.getTables().get(0).getColumns(), is(Arrays.asList("id")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_listTables_limitOverMaxPageSize_rejected() {
+        sut = HiveController.Builder.create()
+            .withIndex(mock(TableIndex.class), new Config.Index())
+            .asWho(userIdentity).build();
+
+        sut.listTables("cccccf34-f597", 0, 100000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_dropOrgTables_queueJobWithProgress() throws Exception {
+        final Job job = mock(Job.class);
+        when(job.getId()).thenReturn("42");
+        final ArgumentCaptor<Callable> task = ArgumentCaptor.forClass(Callable.class);
+        final ArgumentCaptor<Object> progress = ArgumentCaptor.forClass(Object.class);
+        when(jobService.submit(eq("alice"), task.capture(), progress.capture())).thenReturn(job);
+
+        ResponseEntity<Job> response =
+            sut.dropOrgTables("cccccf34-f597-4634-8dd2-1875c06b9c4c");
+
+        assertThat(response.getStatusCode(), is(HttpStatus.ACCEPTED));
+        assertThat(response.getHeaders().getLocation().toString(), is("/rest/jobs/42"));
+
+        task.getValue().call();
+
+        verify(hiveService).dropDatabase(eq("cccccf34_f597_4634_8dd2_1875c06b9c4c"),
+                                         (JwtToken) any(),
+                                         eq((TeardownProgress) progress.getValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_dropOrgTables_invalidOrg_rejected() {
+        sut.dropOrgTables("org; drop database other");
+    }
+
+    @Test
+    public void test_createTables_invalidMetadata_reportedSeparately() {
+        final Metadata valid = new Metadata();
+        final Metadata invalid = new Metadata();
+        when(metadataMapper.apply(invalid)).thenThrow(new IllegalStateException("invalid"));
+        when(userIdentity.getRawToken()).thenReturn(
+            JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
+        when(hiveService.createTables(any(), any()))
+            .thenReturn(Collections.singletonList(Optional.empty()));
+
+        List<BatchItemResponse> result = sut.createTables(Arrays.asList(invalid, valid));
+
+        verify(hiveService).createTables(eq(Collections.singletonList(hiveTable)), any());
+        assertThat(result.get(0).getStatus(), is(BatchItemResponse.Status.FAILED));
+        assertThat(result.get(0).getError(), is("invalid"));
+        assertThat(result.get(1).getStatus(), is(BatchItemResponse.Status.CREATED));
+        assertThat(result.get(1).getIndex(), is(1));
+        Assert.assertNotNull(result.get(1).getHueUrl());
+    }
+
+    @Test
+    public void test_createTablesFromStream_writeResultOfEachRecord() throws Exception {
+        when(userIdentity.getRawToken()).thenReturn(
+            JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
+        sut = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(metadataMapper)
+            .withHive(hiveService)
+            .withColumnar(columnarMaterializer)
+            .withBatchExecutor(MoreExecutors.newDirectExecutorService(), new Config.Batch())
+            .asWho(userIdentity).build();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent("{\"title\":\"one\"}\n\nnot json\n".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        sut.createTablesFromStream(request, response);
+
+        verify(hiveService, times(1)).createTable(eq(hiveTable), any());
+        String[] lines = response.getContentAsString().split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(lines[0], containsString("\"status\":\"CREATED\""));
+        assertThat(lines[1], containsString("\"index\":1"));
+        assertThat(lines[1], containsString("\"status\":\"FAILED\""));
+    }
+
+    @Test
+    public void test_createTablesFromStream_bodyFailsMidStream_resultsWrittenBeforeReturn()
+        throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        sut = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(metadataMapper)
+            .withHive(hiveService)
+            .withColumnar(columnarMaterializer)
+            .withBatchExecutor(executor, new Config.Batch())
+            .asWho(userIdentity).build();
+        doAnswer(invocation -> {
+            Thread.sleep(100);
+            return null;
+        }).when(hiveService).createTable(any(), any());
+        InputStream body = new SequenceInputStream(
+            new ByteArrayInputStream("{\"title\":\"one\"}\n".getBytes(StandardCharsets.UTF_8)),
+            new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("connection reset");
+                }
+            });
+        MockHttpServletRequest request = new MockHttpServletRequest() {
+            @Override
+            public ServletInputStream getInputStream() {
+                return new DelegatingServletInputStream(body);
+            }
+        };
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        try {
+            sut.createTablesFromStream(request, response);
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            // when the body breaks, the record read before is still done and reported
+            assertThat(response.getContentAsString(), containsString("\"status\":\"CREATED\""));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_createTablesFromStream_recordTooLong_reportedAsFailed() throws Exception {
+        Config.Batch batch = new Config.Batch();
+        batch.setMaxRecordLength(20);
+        sut = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(metadataMapper)
+            .withHive(hiveService)
+            .withColumnar(columnarMaterializer)
+            .withBatchExecutor(MoreExecutors.newDirectExecutorService(), batch)
+            .asWho(userIdentity).build();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        String tooLong = "{\"title\":\"" + Strings.repeat("x", 100) + "\"}";
+        request.setContent((tooLong + "\n{\"title\":\"one\"}\r\n").getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        sut.createTablesFromStream(request, response);
+
+        verify(hiveService, times(1)).createTable(eq(hiveTable), any());
+        String[] lines = response.getContentAsString().split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(lines[0], containsString("\"index\":0"));
+        assertThat(lines[0], containsString("\"status\":\"FAILED\""));
+        assertThat(lines[1], containsString("\"index\":1"));
+        assertThat(lines[1], containsString("\"status\":\"CREATED\""));
+    }
+
+    @Test
+    public void test_createTable_invalidMetadata_mappingTaggedWithUnknownOrg() {
+        HiveMetrics metrics = new HiveMetrics();
+        sut = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(metadataMapper)
+            .withHive(hiveService)
+            .withColumnar(columnarMaterializer)
+            .withMetrics(metrics)
+            .asWho(userIdentity).build();
+        when(metadataMapper.apply(any())).thenThrow(new IllegalArgumentException("invalid"));
+        Metadata metadata = new Metadata();
+        metadata.setOrgUUID("any string at all");
+
+        try {
+            sut.createTable(metadata);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            List<String> names = metrics.metrics().stream()
+                .map(Metric::getName)
+                .collect(Collectors.toList());
+            assertThat(names, hasItem("publish.mapping.create.unknown.count"));
+            assertThat(names, not(hasItem(containsString("any string"))));
+        }
+    }
+
     @Test
     public void test_dropTable() {
         when(metadataMapper.apply(any())).thenReturn(hiveTable);
         Metadata metadata = new Metadata();
         metadata.setOrgUUID("cccccf34-f597-4634-8dd2-1875c06b9c4c");
-        sut.dropTable(metadata);
+        sut.dropTable(metadata).getResult();
 
         verify(hiveService, times(1)).dropTable(any(), any());
     }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.service.Job;
+import org.trustedanalytics.datasetpublisher.service.JobService;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+public class JobControllerTest {
+
+    private JobService jobService;
+    private JwtToken userIdentity;
+    private JobController sut;
+
+    @Before
+    public void setUp() {
+        jobService = new JobService(new Config.Jobs());
+        userIdentity = mock(JwtToken.class);
+        sut = new JobController(jobService, userIdentity);
+    }
+
+    @After
+    public void tearDown() {
+        jobService.destroy();
+    }
+
+    @Test
+    public void test_getJob_ownJob_returned() {
+        final Job job = jobService.submit("alice", () -> "result");
+        when(userIdentity.getUserId()).thenReturn("alice");
+
+        assertThat(sut.getJob(job.getId()).getStatusCode(), is(HttpStatus.OK));
+    }
+
+    @Test
+    public void test_getJob_jobOfOtherUser_notFound() {
+        final Job job = jobService.submit("alice", () -> "result");
+        when(userIdentity.getUserId()).thenReturn("bob");
+
+        assertThat(sut.getJob(job.getId()).getStatusCode(), is(HttpStatus.NOT_FOUND));
+    }
+
+    @Test
+    public void test_cancelJob_jobOfOtherUser_notFound() {
+        final Job job = jobService.submit("alice", () -> "result");
+        when(userIdentity.getUserId()).thenReturn("bob");
+
+        assertThat(sut.cancelJob(job.getId()).getStatusCode(), is(HttpStatus.NOT_FOUND));
+    }
+}
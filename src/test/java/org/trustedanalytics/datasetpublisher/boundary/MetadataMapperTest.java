@@ -28,13 +28,16 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.trustedanalytics.datasetpublisher.Config;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
 
 import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
@@ -95,6 +98,44 @@ public class MetadataMapperTest {
         assertThat(table.location, is("/cf/broker/instances/12/34"));
     }
 
+    @Test
+    public void testMapCommaHeaderWithSemicolons_splitWithComma() {
+        // given
+        final Metadata metadata = new Metadata();
+        metadata.setOrgUUID(orgUUID.toString());
+        metadata.setTitle("title");
+        metadata.setDataSample("a;b;c,d;e\n1;2;3,4;5");
+        metadata.setTargetUri("hdfs://10.10.123.123/cf/broker/instances/12/34/000000_1");
+
+        // when
+        final HiveTable table = metadataMapper.apply(metadata);
+
+        // then
+        assertThat(table.fields, contains("a_b_c", "d_e"));
+        assertThat(table.format, is(TextFormat.DEFAULT));
+    }
+
+    @Test
+    public void testMapFormatDetection_headerSplitWithDetectedDelimiter() {
+        // given
+        final Config.Format format = new Config.Format();
+        format.setEnabled(true);
+        final MetadataMapper mapper =
+            new MetadataMapper(() -> ImmutableSet.of(), new Config.Header(), format);
+        final Metadata metadata = new Metadata();
+        metadata.setOrgUUID(orgUUID.toString());
+        metadata.setTitle("title");
+        metadata.setDataSample("id;name,surname;price\n1;\"Smith, John\";9.99\n2;Doe;10");
+        metadata.setTargetUri("hdfs://10.10.123.123/cf/broker/instances/12/34/000000_1");
+
+        // when
+        final HiveTable table = mapper.apply(metadata);
+
+        // then
+        assertThat(table.fields, contains("id", "name_surname", "price"));
+        assertThat(table.format.delimiter, is(';'));
+    }
+
     @Test
     public void testValidateDuplicatedFields(){
         // given
@@ -156,6 +197,54 @@ public class MetadataMapperTest {
         assertThat(table.fields, containsInAnyOrder("one", "two", StringUtils.repeat("a", MetadataMapper.IDENTIFIER_MAX_LEN)));
     }
 
+    @Test
+    public void testMapUnusualFieldNames() {
+        // given
+        final Metadata metadata = new Metadata();
+        metadata.setOrgUUID(orgUUID.toString());
+        metadata.setTitle("Date");
+        metadata.setDataSample("Za\u017c\u00f3\u0142\u0107,\"Line\nbreak\",_,Location");
+        metadata.setTargetUri("hdfs://10.10.123.123/cf/broker/instances/12/34/000000_1");
+        metadata.setIsPublic(false);
+
+        // when
+        final HiveTable table = metadataMapper.apply(metadata);
+
+        // then
+        assertThat(table.tableName, is("date_"));
+        assertThat(table.fields, contains("za____", "xline_break", "x_", "location_"));
+    }
+
+    @Test
+    public void testMapQuotedFieldNames_onlyFirstRecord() {
+        // given
+        final Metadata metadata = new Metadata();
+        metadata.setOrgUUID(orgUUID.toString());
+        metadata.setTitle("title");
+        metadata.setDataSample("\"Price, net\",\"Size \"\"XL\"\"\",id,\r\n1,2,3\n");
+        metadata.setTargetUri("hdfs://10.10.123.123/cf/broker/instances/12/34/000000_1");
+        metadata.setIsPublic(false);
+
+        // when
+        final HiveTable table = metadataMapper.apply(metadata);
+
+        // then
+        assertThat(table.fields, contains("price__net", "size__xl_", "id"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMapMissingDataSample_rejected() {
+        // given
+        final Metadata metadata = new Metadata();
+        metadata.setOrgUUID(orgUUID.toString());
+        metadata.setTitle("title");
+        metadata.setTargetUri("file:///etc/passwd");
+        metadata.setIsPublic(false);
+
+        // when
+        metadataMapper.apply(metadata);
+    }
+
     @Configuration
     static class HiveControllerTestConfig {
 
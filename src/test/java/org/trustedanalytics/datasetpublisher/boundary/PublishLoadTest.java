@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.boundary;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.service.ColumnarMaterializer;
+import org.trustedanalytics.datasetpublisher.service.HiveConnectionPool;
+import org.trustedanalytics.datasetpublisher.service.HiveGuard;
+import org.trustedanalytics.datasetpublisher.service.HiveMetrics;
+import org.trustedanalytics.datasetpublisher.service.HiveService;
+import org.trustedanalytics.datasetpublisher.service.HiveSessions;
+import org.trustedanalytics.datasetpublisher.service.HiveStandIn;
+import org.trustedanalytics.datasetpublisher.service.QueryBuilder;
+import org.trustedanalytics.datasetpublisher.service.SlowOperationLog;
+import org.trustedanalytics.datasetpublisher.service.TableExistenceCache;
+import org.trustedanalytics.datasetpublisher.service.UserCredentials;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test of publishing through Spring MVC, with the whole service in place and HiveServer2
+ * replaced by {@link HiveStandIn}. Requests are sent at target rate regardless of how long the
+ * previous ones take, and latency is measured from the time a request was due, so that a slow
+ * service isn't hidden by fewer requests being sent. Skipped unless target rate is given:
+ *
+ * <pre>
+ * mvn test -Dtest=PublishLoadTest -Dload.rps=200 [-Dload.seconds=30] [-Dload.tables=1000]
+ *     [-Dload.connectMillis=200] [-Dload.statementMillis=20] [-Dload.failureRate=0]
+ *     [-Dload.clients=256]
+ * </pre>
+ */
+public class PublishLoadTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublishLoadTest.class);
+
+    private HiveStandIn standIn;
+    private HiveConnectionPool pool;
+    private ColumnarMaterializer columnarMaterializer;
+    private ExecutorService batchExecutor;
+    private ExecutorService hiveExecutor;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(System.getProperty("load.rps"));
+
+        standIn = new HiveStandIn()
+            .withConnectMillis(Long.getLong("load.connectMillis", 200))
+            .withStatementMillis(Long.getLong("load.statementMillis", 20))
+            .withFailureRate(Double.parseDouble(System.getProperty("load.failureRate", "0")));
+        final UserCredentials credentials = new UserCredentials(new Config.Credentials());
+        pool = new HiveConnectionPool(standIn.client(), new Config.HivePool(), credentials);
+        final HiveSessions sessions =
+            new HiveSessions(pool, new HiveMetrics(), new HiveGuard(new Config.Guard()));
+        batchExecutor = Executors.newFixedThreadPool(new Config.Batch().getParallelism());
+        final HiveService hiveService = new HiveService(new QueryBuilder(), sessions,
+            new TableExistenceCache(new Config.ExistenceCache()), batchExecutor,
+            new SlowOperationLog(new Config.SlowLog()), new Config.Teardown(),
+            new Config.SchemaEvolution());
+        final Config.Execution execution = new Config.Execution();
+        hiveExecutor = new Config().hiveExecutor(execution);
+        columnarMaterializer = new ColumnarMaterializer(null, null, new Config.Columnar());
+        final Config.Hue hue = new Config.Hue();
+        hue.setUrl("http://hue.example.com");
+        hue.setAvailable(true);
+        final Config.Arcadia arcadia = new Config.Arcadia();
+
+        final HiveController controller = HiveController.Builder.create()
+            .withHue(hue)
+            .withArcadia(arcadia)
+            .withMetadataMapper(new MetadataMapper(new Config().restrictedKeywords()))
+            .withHive(hiveService)
+            .withColumnar(columnarMaterializer)
+            .withHiveExecutor(hiveExecutor, execution)
+            .withCredentials(credentials)
+            .asWho(new TapOauthToken(JwtHelper.encode("{\"user_id\":\"alice\"}",
+                                                      new MacSigner("secret")).getEncoded()))
+            .build();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() {
+        if (standIn != null) {
+            hiveExecutor.shutdownNow();
+            batchExecutor.shutdownNow();
+            columnarMaterializer.destroy();
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void testCreateTable_targetRate() throws Exception {
+        final int rps = Integer.getInteger("load.rps");
+        final int seconds = Integer.getInteger("load.seconds", 30);
+        final int tables = Integer.getInteger("load.tables", 1000);
+        final int requests = rps * seconds;
+        final byte[][] bodies = new byte[tables][];
+        final ObjectMapper objectMapper = new ObjectMapper();
+        for (int i = 0; i < tables; i++) {
+            bodies[i] = objectMapper.writeValueAsBytes(metadata(i));
+        }
+
+        final ScheduledExecutorService clients =
+            Executors.newScheduledThreadPool(Integer.getInteger("load.clients", 256));
+        final long[] latencies = new long[requests];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(requests);
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (int i = 0; i < requests; i++) {
+            final int request = i;
+            final long due = start + i * intervalNanos;
+            clients.schedule(() -> {
+                try {
+                    if (!createTable(bodies[request % tables])) {
+                        failures.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    latencies[request] = System.nanoTime() - due;
+                    done.countDown();
+                }
+            }, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        final boolean completed = done.await(seconds + 60, TimeUnit.SECONDS);
+        final long elapsed = System.nanoTime() - start;
+        clients.shutdownNow();
+
+        Arrays.sort(latencies);
+        LOGGER.info(String.format(
+            "target %d rps: %d requests, %d failed, throughput %.1f rps, latency p50 %.1f ms, "
+                + "p99 %.1f ms, p999 %.1f ms, max %.1f ms; %d Hive connections, %d statements",
+            rps, requests, failures.get(), requests * 1e9 / elapsed,
+            millis(percentile(latencies, 0.5)), millis(percentile(latencies, 0.99)),
+            millis(percentile(latencies, 0.999)), millis(latencies[requests - 1]),
+            standIn.getConnections(), standIn.getStatements()));
+        assertThat(completed, is(true));
+    }
+
+    private boolean createTable(byte[] body) throws Exception {
+        final MvcResult pending = mockMvc.perform(post("/rest/tables")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+            .andReturn();
+        if (!pending.getRequest().isAsyncStarted()) {
+            // rejected before reaching Hive executor
+            return false;
+        }
+        pending.getAsyncResult(TimeUnit.MINUTES.toMillis(1));
+        return mockMvc.perform(asyncDispatch(pending)).andReturn()
+            .getResponse().getStatus() == 201;
+    }
+
+    private static Metadata metadata(int table) {
+        final Metadata metadata = new Metadata();
+        metadata.setOrgUUID("77fca4b7-5e06-4c40-909e-36fcaff90534");
+        metadata.setTitle("dataset " + table);
+        metadata.setDataSample("id,name,amount,date");
+        metadata.setTargetUri("hdfs://nameservice/org/dataset_" + table + "/000000_1");
+        metadata.setIsPublic(false);
+        return metadata;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.ColumnarCopy;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Optional;
+
+public class ColumnarMaterializerTest {
+
+  private final HiveTable table = new HiveTable("db", "sales", ImmutableList.of("id"), "/sales");
+  private final ColumnarCopy copy =
+      ColumnarMaterializer.copyOf(table, ColumnarCopy.Format.PARQUET);
+
+  private HiveSessions sessions;
+  private Statement statement;
+  private JwtToken userIdentity;
+  private Config.Columnar config;
+  private ColumnarMaterializer sut;
+
+  @Before
+  public void setUp() throws SQLException {
+    sessions = mock(HiveSessions.class);
+    statement = mock(Statement.class);
+    doAnswer(invocation -> {
+      try {
+        ((HiveSessions.SessionWork) invocation.getArguments()[3]).execute(statement);
+      } catch (SQLException e) {
+        // as failed session is told by hive sessions
+        throw new RuntimeException(e);
+      }
+      return null;
+    }).when(sessions).run(any(), any(), any(), any());
+    userIdentity = mock(JwtToken.class);
+    when(userIdentity.getRawToken()).thenReturn(
+        JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
+    config = new Config.Columnar();
+    config.setFormat(ColumnarCopy.Format.PARQUET);
+    sut = new ColumnarMaterializer(new QueryBuilder(), sessions, config,
+                                   MoreExecutors.newDirectExecutorService());
+  }
+
+  @Test
+  public void testCopyOf_nameUniqueToSourceTable() {
+    // when
+    final ColumnarCopy other = ColumnarMaterializer.copyOf(
+        new HiveTable("db", "sales_parquet", ImmutableList.of("id"), "/other"),
+        ColumnarCopy.Format.PARQUET);
+
+    // then
+    assertThat(copy.tableName.matches("sales_[0-9a-f]{8}_parquet"), is(true));
+    assertThat(copy.source, is("db.sales"));
+    assertThat(other.tableName.equals(copy.tableName), is(false));
+  }
+
+  @Test
+  public void testTableCreated_copyMaterializedAndReady() throws SQLException {
+    // given
+    givenCopies(null, "db.sales");
+
+    // when
+    sut.tableCreated(table, userIdentity);
+
+    // then
+    verify(statement).executeUpdate(new QueryBuilder().createColumnarCopy(table, copy, "SNAPPY"));
+    verify(statement, never()).executeUpdate(startsWith("drop"));
+    verify(statement, never()).executeUpdate(startsWith("set"));
+    assertThat(sut.findReady(table).map(ready -> ready.tableName), is(Optional.of(copy.tableName)));
+  }
+
+  @Test
+  public void testTableCreated_copyOfPreviousDefinition_madeAgain() throws SQLException {
+    // given
+    givenCopies("db.sales", "db.sales");
+
+    // when
+    sut.tableCreated(table, userIdentity);
+
+    // then
+    verify(statement).executeUpdate("drop table if exists " + copy.getFullyQualifiedName());
+    verify(statement).executeUpdate(new QueryBuilder().createColumnarCopy(table, copy, "SNAPPY"));
+    assertThat(sut.findReady(table).isPresent(), is(true));
+  }
+
+  @Test
+  public void testTableCreated_nameTakenByOtherTable_notReadyNotDropped() throws SQLException {
+    // given
+    final String untagged = "Table " + copy.getFullyQualifiedName() + " does not have property";
+    givenCopies(untagged, untagged);
+
+    // when
+    sut.tableCreated(table, userIdentity);
+
+    // then
+    verify(statement, never()).executeUpdate(startsWith("drop"));
+    assertThat(sut.findReady(table).isPresent(), is(false));
+  }
+
+  @Test
+  public void testTableDropped_untrackedCopyOfOtherTable_notDropped() throws SQLException {
+    // given
+    givenCopies("db.other");
+
+    // when
+    sut.tableDropped(table, userIdentity);
+
+    // then
+    verify(statement, never()).executeUpdate(anyString());
+  }
+
+  @Test
+  public void testTableDropped_untrackedCopyOfTable_dropped() throws SQLException {
+    // given
+    givenCopies("db.sales");
+
+    // when
+    sut.tableDropped(table, userIdentity);
+
+    // then
+    verify(statement).executeUpdate("drop table if exists " + copy.getFullyQualifiedName());
+  }
+
+  @Test
+  public void testTableDropped_noCopy_nothingDropped() throws SQLException {
+    // given
+    givenCopies((String) null);
+
+    // when
+    sut.tableDropped(table, userIdentity);
+
+    // then
+    verify(statement, never()).executeUpdate(anyString());
+    assertThat(sut.findReady(table).isPresent(), is(false));
+  }
+
+  @Test
+  public void testTableCreated_formatNotSet_nothingMaterialized() {
+    // given
+    config.setFormat(null);
+
+    // when
+    sut.tableCreated(table, userIdentity);
+
+    // then
+    verify(sessions, never()).run(any(), any(), any(), any());
+  }
+
+  /**
+   * @param sources source tag of the copy returned by consecutive look ups, null if there's no
+   *                copy at the time
+   */
+  private void givenCopies(String... sources) throws SQLException {
+    final QueryBuilder queryBuilder = new QueryBuilder();
+    final ResultSet[] tables = new ResultSet[sources.length];
+    final ResultSet[] properties = new ResultSet[sources.length];
+    int looked = 0;
+    for (int i = 0; i < sources.length; i++) {
+      tables[i] = resultSet(sources[i] == null ? null : copy.tableName);
+      if (sources[i] != null) {
+        properties[looked++] = resultSet(sources[i]);
+      }
+    }
+    when(statement.executeQuery(queryBuilder.showColumnarCopy(copy)))
+        .thenReturn(tables[0], copyOfRange(tables, 1, tables.length));
+    if (looked > 0) {
+      when(statement.executeQuery(queryBuilder.showColumnarCopySource(copy)))
+          .thenReturn(properties[0], copyOfRange(properties, 1, looked));
+    }
+  }
+
+  private static ResultSet[] copyOfRange(ResultSet[] array, int from, int to) {
+    return Arrays.copyOfRange(array, from, Math.max(from, to));
+  }
+
+  private static ResultSet resultSet(String value) throws SQLException {
+    final ResultSet rs = mock(ResultSet.class);
+    when(rs.next()).thenReturn(value != null, false);
+    when(rs.getString(1)).thenReturn(value);
+    return rs;
+  }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class FormatDetectorTest {
+
+  private static final String URI = "hdfs://nameservice/org/dataset/000000_1";
+
+  private final HiveTable table = new HiveTable("db", "table",
+      ImmutableList.of("id", "name", "price"), "/org/dataset", URI);
+
+  private final JwtToken identity = mock(JwtToken.class);
+  private DatasetSource datasetSource;
+  private Config.Format config;
+  private FormatDetector sut;
+
+  @Before
+  public void setUp() {
+    datasetSource = mock(DatasetSource.class);
+    config = new Config.Format();
+    config.setEnabled(true);
+    sut = new FormatDetector(datasetSource, config);
+  }
+
+  @Test
+  public void testEnrich_commaSeparatedWithHeader() throws IOException {
+    // given
+    givenFile(URI, "id,name,price\n1,\"Smith, John\",9.99\n2,Doe,10\n");
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result.format, is(new TextFormat(',', true, null)));
+  }
+
+  @Test
+  public void testEnrich_tabSeparatedWithoutHeader() throws IOException {
+    // given
+    givenFile(URI, "1\tSmith, John\t9.99\r\n2\tDoe\t10\r\n3\tRoe\t0.5\r\n");
+
+    // when
+    final HiveTable result = sut.enrich(delimitedWith('\t'), identity);
+
+    // then
+    assertThat(result.format, is(new TextFormat('\t', false, null)));
+  }
+
+  @Test
+  public void testEnrich_delimiterOfTable_kept() throws IOException {
+    // given
+    givenFile(URI, "id|name|price\n1|Smith|2\n2|Doe|3\n");
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result.format.delimiter, is(','));
+  }
+
+  @Test
+  public void testDelimiterOf_consistentAcrossRecords_preferred() {
+    // when
+    final char delimiter = FormatDetector.delimiterOf("id|name|price\n1|a;b;c|2\n2|d|3\n3|e;f|4\n");
+
+    // then
+    assertThat(delimiter, is('|'));
+  }
+
+  @Test
+  public void testDelimiterOf_noneFound_comma() {
+    // when
+    final char delimiter = FormatDetector.delimiterOf("id\n1\n");
+
+    // then
+    assertThat(delimiter, is(','));
+  }
+
+  @Test
+  public void testEnrich_sampleCutInRecord_partialRecordIgnored() throws IOException {
+    // given
+    config.setSampleChars(30);
+    givenFile(URI, "id;name;price\n1;Smith;9.99\n2;Doe;10\n");
+
+    // when
+    final HiveTable result = sut.enrich(delimitedWith(';'), identity);
+
+    // then
+    assertThat(result.format, is(new TextFormat(';', true, null)));
+  }
+
+  @Test
+  public void testEnrich_compressedFile_codecDetected() throws IOException {
+    // given
+    final String uri = URI + ".gz";
+    givenFile(uri, "id,name,price\n1,Smith,9.99\n");
+    final HiveTable compressed = new HiveTable("db", "table",
+        ImmutableList.of("id", "name", "price"), "/org/dataset", uri);
+
+    // when
+    final HiveTable result = sut.enrich(compressed, identity);
+
+    // then
+    assertThat(result.format, is(new TextFormat(',', true, "gzip")));
+  }
+
+  @Test
+  public void testEnrich_unreadableFile_formatLeftAsItIs() throws IOException {
+    // given
+    when(datasetSource.open(URI, "db", identity)).thenThrow(new IOException("unreachable"));
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+  }
+
+  @Test
+  public void testEnrich_disabled_fileNotRead() throws IOException {
+    // given
+    config.setEnabled(false);
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+  }
+
+  private HiveTable delimitedWith(char delimiter) {
+    return table.withFormat(new TextFormat(delimiter, false, null));
+  }
+
+  private void givenFile(String uri, String content) throws IOException {
+    when(datasetSource.open(uri, "db", identity))
+        .thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+  }
+}
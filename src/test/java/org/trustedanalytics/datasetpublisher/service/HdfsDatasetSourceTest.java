@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.apache.hadoop.security.AccessControlException;
+import org.junit.Test;
+
+public class HdfsDatasetSourceTest {
+
+  private static final String ROOT = "/org";
+  private static final String DATABASE = "0b0f4e31_1d24_4c1c_b2bd_28fa1e2f3c22";
+  private static final String ORG_DIR =
+      "hdfs://nameservice1/org/0b0f4e31-1d24-4c1c-b2bd-28fa1e2f3c22";
+
+  @Test
+  public void testCheckAllowed_fileOfOrganization_normalized() throws AccessControlException {
+    // when
+    final String uri =
+        HdfsDatasetSource.checkAllowed(ORG_DIR + "/data/./000000_1", DATABASE, ROOT).toString();
+
+    // then
+    assertThat(uri, is(ORG_DIR + "/data/000000_1"));
+  }
+
+  @Test(expected = AccessControlException.class)
+  public void testCheckAllowed_otherScheme_rejected() throws AccessControlException {
+    HdfsDatasetSource.checkAllowed("file:///org/" + DATABASE + "/000000_1", DATABASE, ROOT);
+  }
+
+  @Test(expected = AccessControlException.class)
+  public void testCheckAllowed_otherOrganization_rejected() throws AccessControlException {
+    HdfsDatasetSource.checkAllowed("hdfs://nameservice1/org/other/000000_1", DATABASE, ROOT);
+  }
+
+  @Test(expected = AccessControlException.class)
+  public void testCheckAllowed_outsideOfRoot_rejected() throws AccessControlException {
+    HdfsDatasetSource.checkAllowed("hdfs://nameservice1/user/hive/000000_1", DATABASE, ROOT);
+  }
+
+  @Test(expected = AccessControlException.class)
+  public void testCheckAllowed_escapingParentDirectory_rejected() throws AccessControlException {
+    HdfsDatasetSource.checkAllowed(ORG_DIR + "/%2E%2E/other/000000_1", DATABASE, ROOT);
+  }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.hadoop.config.client.helper.Hive;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.login.LoginException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HiveConnectionPoolTest {
+
+  private static final long NOW = TimeUnit.DAYS.toMillis(365);
+
+  @Mock
+  private Hive hiveClient;
+
+  private MutableClock clock;
+
+  private HiveConnectionPool sut;
+
+  @Before
+  public void setUp() throws Exception {
+    when(hiveClient.getConnection(any())).thenAnswer(invocation -> mock(Connection.class));
+
+    final Config.HivePool config = new Config.HivePool();
+    config.setValidationQuery(null);
+    config.setTokenExpiryMarginMillis(TimeUnit.MINUTES.toMillis(1));
+    clock = new MutableClock(NOW);
+    sut = new HiveConnectionPool(hiveClient, config,
+                                 new UserCredentials(new Config.Credentials()), clock);
+  }
+
+  @Test
+  public void test_borrow_sameUser_reusesConnection() throws Exception {
+    // given
+    final JwtToken token = token("alice", NOW + TimeUnit.HOURS.toMillis(1));
+
+    // when
+    final Connection first = borrowAndRelease(token);
+    final Connection second = borrowAndRelease(token);
+
+    // then
+    assertThat(second, is(sameInstance(first)));
+    verify(hiveClient, times(1)).getConnection(any());
+  }
+
+  @Test
+  public void test_borrow_differentUsers_opensSeparateConnections() throws Exception {
+    // given
+    final long expiresAt = NOW + TimeUnit.HOURS.toMillis(1);
+
+    // when
+    final Connection alices = borrowAndRelease(token("alice", expiresAt));
+    final Connection bobs = borrowAndRelease(token("bob", expiresAt));
+
+    // then
+    assertThat(bobs, is(not(sameInstance(alices))));
+    verify(hiveClient, times(2)).getConnection(any());
+  }
+
+  @Test
+  public void test_borrow_closedConnection_opensNewOne() throws Exception {
+    // given
+    final JwtToken token = token("alice", NOW + TimeUnit.HOURS.toMillis(1));
+    final Connection first = borrowAndRelease(token);
+    when(first.isClosed()).thenReturn(true);
+
+    // when
+    final Connection second = borrowAndRelease(token);
+
+    // then
+    assertThat(second, is(not(sameInstance(first))));
+    verify(first).close();
+  }
+
+  @Test
+  public void test_borrow_invalidatedLease_opensNewOne() throws Exception {
+    // given
+    final JwtToken token = token("alice", NOW + TimeUnit.HOURS.toMillis(1));
+    final Connection first;
+    try (HiveConnectionPool.Lease lease = sut.borrow(token)) {
+      first = lease.connection();
+      lease.invalidate();
+    }
+
+    // when
+    final Connection second = borrowAndRelease(token);
+
+    // then
+    assertThat(second, is(not(sameInstance(first))));
+    verify(first).close();
+  }
+
+  @Test
+  public void test_borrow_tokenCloseToExpiry_retiresConnection() throws Exception {
+    // given
+    final JwtToken token = token("alice", NOW + TimeUnit.MINUTES.toMillis(10));
+    final Connection first = borrowAndRelease(token);
+
+    // when
+    clock.set(NOW + TimeUnit.MINUTES.toMillis(9) + 1);
+    final Connection second = borrowAndRelease(
+        token("alice", NOW + TimeUnit.HOURS.toMillis(1)));
+
+    // then
+    assertThat(second, is(not(sameInstance(first))));
+    verify(first).close();
+  }
+
+  @Test(expected = LoginException.class)
+  public void test_borrow_expiredToken_throwsLoginException() throws Exception {
+    // given
+    final JwtToken token = token("alice", NOW - 1);
+
+    try {
+      // when
+      sut.borrow(token);
+    } finally {
+      // then
+      verify(hiveClient, never()).getConnection(any());
+    }
+  }
+
+  @Test(expected = SQLException.class)
+  public void test_borrow_connectionFailsUnexpectedly_throwsSQLException() throws Exception {
+    // given
+    when(hiveClient.getConnection(any())).thenAnswer(invocation -> {
+      throw new Exception("unexpected");
+    });
+
+    // when
+    sut.borrow(token("alice", NOW + TimeUnit.HOURS.toMillis(1)));
+
+    // then
+    // failure is reported like other failures of Hive, rather than as an invalid request
+  }
+
+  private Connection borrowAndRelease(JwtToken token) throws Exception {
+    try (HiveConnectionPool.Lease lease = sut.borrow(token)) {
+      return lease.connection();
+    }
+  }
+
+  private static JwtToken token(String userId, long expiresAt) {
+    final String claims = String.format("{\"user_id\":\"%s\",\"exp\":%d}",
+                                        userId, TimeUnit.MILLISECONDS.toSeconds(expiresAt));
+    final JwtToken token = mock(JwtToken.class);
+    when(token.getUserId()).thenReturn(userId);
+    when(token.getRawToken())
+        .thenReturn(JwtHelper.encode(claims, new MacSigner("secret")).getEncoded());
+    return token;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.datasetpublisher.Config;
+
+import java.net.SocketException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+public class HiveGuardTest {
+
+  private static final long NOW = 1450000000000L;
+
+  private Config.Guard config;
+  private MutableClock clock;
+  private HiveGuard sut;
+
+  @Before
+  public void setUp() {
+    config = new Config.Guard();
+    config.setWindowSize(4);
+    config.setMinimumCalls(4);
+    config.setFailureRateThreshold(50);
+    config.setOpenMillis(TimeUnit.SECONDS.toMillis(30));
+    config.setMaxConcurrentCalls(2);
+    config.setMaxWaitMillis(0);
+    clock = new MutableClock(NOW);
+    sut = new HiveGuard(config, clock);
+  }
+
+  @Test
+  public void testAcquire_failureRateBelowThreshold_closed() {
+    // when
+    call(false, false, false, true);
+
+    // then
+    assertThat(sut.getState(), is(HiveGuard.State.CLOSED));
+  }
+
+  @Test
+  public void testAcquire_failureRateReachesThreshold_rejectedWithRetryAfter() {
+    // given
+    call(false, true, false, true);
+    clock.advance(TimeUnit.SECONDS.toMillis(10));
+
+    // when
+    final HiveUnavailableException rejection = rejection();
+
+    // then
+    assertThat(sut.getState(), is(HiveGuard.State.OPEN));
+    assertThat(rejection.getRetryAfterSeconds(), is(20L));
+  }
+
+  @Test
+  public void testAcquire_openPeriodPassed_singleProbeClosesOnSuccess() {
+    // given
+    call(true, true, true, true);
+    clock.advance(TimeUnit.SECONDS.toMillis(30));
+
+    // when
+    final HiveGuard.Permit probe = sut.acquire();
+    rejection();
+    probe.release(false);
+
+    // then
+    assertThat(sut.getState(), is(HiveGuard.State.CLOSED));
+  }
+
+  @Test
+  public void testAcquire_probeFails_openAgain() {
+    // given
+    call(true, true, true, true);
+    clock.advance(TimeUnit.SECONDS.toMillis(30));
+
+    // when
+    sut.acquire().release(true);
+
+    // then
+    assertThat(sut.getState(), is(HiveGuard.State.OPEN));
+    assertThat(rejection().getRetryAfterSeconds(), is(30L));
+  }
+
+  @Test
+  public void testAcquire_bulkheadFull_rejected() {
+    // given
+    sut.acquire();
+    sut.acquire();
+
+    // when
+    rejection();
+  }
+
+  @Test
+  public void testIsUnavailability_connectionFailure_true() {
+    assertThat(HiveGuard.isUnavailability(
+        new SQLException("closed", "08S01", new SocketException("Connection reset"))), is(true));
+    assertThat(HiveGuard.isUnavailability(new SQLException("refused", "08001")), is(true));
+    assertThat(HiveGuard.isUnavailability(new SQLTimeoutException("timeout")), is(true));
+  }
+
+  @Test
+  public void testIsUnavailability_ddlExecutionError_false() {
+    assertThat(HiveGuard.isUnavailability(new SQLException(
+        "Error while processing statement: FAILED: Execution Error, return code 1 from "
+        + "org.apache.hadoop.hive.ql.exec.DDLTask", "08S01")), is(false));
+  }
+
+  @Test
+  public void testIsUnavailability_userPoolExhausted_false() {
+    assertThat(HiveGuard.isUnavailability(
+        new NoSuchElementException("Timeout waiting for idle object")), is(false));
+  }
+
+  @Test
+  public void testIsUnavailability_invalidStatement_false() {
+    assertThat(HiveGuard.isUnavailability(new SQLException("syntax", "42000")), is(false));
+  }
+
+  private void call(boolean... failures) {
+    for (boolean failed : failures) {
+      sut.acquire().release(failed);
+    }
+  }
+
+  private HiveUnavailableException rejection() {
+    try {
+      sut.acquire();
+      fail("Call has been let through");
+      return null;
+    } catch (HiveUnavailableException e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+public class HiveMetricsTest {
+
+  private final HiveMetrics sut = new HiveMetrics();
+
+  @Test
+  public void testRecord_durations_percentilesInMillis() {
+    // given
+    LongStream.rangeClosed(1, 100).forEach(millis -> sut.record(HiveMetrics.Stage.DDL,
+        HiveMetrics.Operation.CREATE, "org", TimeUnit.MILLISECONDS.toNanos(millis)));
+
+    // when
+    final Map<String, Number> metrics = metrics();
+
+    // then
+    assertThat(metrics, hasEntry("publish.ddl.create.org.count", (Number) 100L));
+    assertThat(metrics, hasEntry("publish.ddl.create.org.p50", (Number) 50.0));
+    assertThat(metrics, hasEntry("publish.ddl.create.org.p99", (Number) 99.0));
+    assertThat(metrics, hasEntry("publish.ddl.create.org.max", (Number) 100.0));
+  }
+
+  @Test
+  public void testRecord_moreThanWindow_percentilesOfRecentDurations() {
+    // given
+    sut.record(HiveMetrics.Stage.TOKEN, TimeUnit.SECONDS.toNanos(10));
+    for (int i = 0; i < HiveMetrics.WINDOW_SIZE; i++) {
+      sut.record(HiveMetrics.Stage.TOKEN, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    // when
+    final Map<String, Number> metrics = metrics();
+
+    // then
+    assertThat(metrics.get("publish.token.p99"), is((Number) 1.0));
+    assertThat(metrics.get("publish.token.max"), is((Number) 10000.0));
+    assertThat(metrics.get("publish.token.count"), is((Number) (HiveMetrics.WINDOW_SIZE + 1L)));
+  }
+
+  @Test
+  public void testFailed_countedByType() {
+    // when
+    sut.failed(HiveMetrics.Operation.DROP, "org", new SQLException());
+    sut.failed(HiveMetrics.Operation.DROP, "org", new SQLException());
+
+    // then
+    assertThat(metrics(), hasEntry("publish.failure.drop.org.SQLException", (Number) 2L));
+  }
+
+  @Test
+  public void testRecord_moreOrganizationsThanTimers_leastRecentlyRecordedDropped() {
+    // given
+    sut.record(HiveMetrics.Stage.DDL, HiveMetrics.Operation.CREATE, "oldest", 1);
+    for (int i = 0; i < HiveMetrics.MAX_TIMERS; i++) {
+      sut.record(HiveMetrics.Stage.DDL, HiveMetrics.Operation.CREATE, "org" + i, 1);
+    }
+
+    // when
+    final Map<String, Number> metrics = metrics();
+
+    // then
+    assertThat(metrics.size(), is(HiveMetrics.MAX_TIMERS * 6));
+    assertThat(metrics.containsKey("publish.ddl.create.oldest.count"), is(false));
+    assertThat(metrics.containsKey("publish.ddl.create.org0.count"), is(true));
+  }
+
+  private Map<String, Number> metrics() {
+    return sut.metrics().stream().collect(Collectors.toMap(Metric::getName, metric -> (Number) metric.getValue()));
+  }
+}
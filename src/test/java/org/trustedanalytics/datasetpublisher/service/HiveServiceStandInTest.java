@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs {@link HiveService} over JDBC connections of {@link HiveStandIn}, with real pooling,
+ * sessions and circuit breaker.
+ */
+public class HiveServiceStandInTest {
+
+  private final JwtToken alice = new TapOauthToken(
+      JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
+
+  private HiveStandIn standIn;
+  private HiveConnectionPool pool;
+  private ExecutorService executor;
+  private Config.HivePool poolConfig;
+  private Config.Guard guardConfig;
+
+  @Before
+  public void setUp() {
+    standIn = new HiveStandIn().withStatementMillis(1);
+    poolConfig = new Config.HivePool();
+    guardConfig = new Config.Guard();
+    executor = Executors.newFixedThreadPool(16);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    if (pool != null) {
+      pool.destroy();
+    }
+  }
+
+  @Test
+  public void testCreateTable_concurrentRequests_tablesCreatedOverPooledConnections()
+      throws Exception {
+    // given
+    final HiveService sut = hiveService();
+    final List<HiveTable> tables = IntStream.range(0, 100)
+        .mapToObj(i -> new HiveTable("db", "table_" + i, Collections.singletonList("id"), "/loc"))
+        .collect(Collectors.toList());
+
+    // when
+    final List<Future<?>> futures = new ArrayList<>();
+    for (HiveTable table : tables) {
+      futures.add(executor.submit(() -> sut.createTable(table, alice)));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    // then
+    assertThat(standIn.tables("db").size(), is(100));
+    assertThat(standIn.getConnections(), is(lessThanOrEqualTo(poolConfig.getMaxTotalPerKey())));
+  }
+
+  @Test
+  public void testDropDatabase_tablesAndDatabaseDropped() {
+    // given
+    final HiveService sut = hiveService();
+    sut.createTables(IntStream.range(0, 120)
+        .mapToObj(i -> new HiveTable("db", "table_" + i, Collections.singletonList("id"), "/loc"))
+        .collect(Collectors.toList()), alice);
+    final TeardownProgress progress = new TeardownProgress("db");
+
+    // when
+    sut.dropDatabase("db", alice, progress);
+
+    // then
+    assertThat(progress.getDropped(), is(120));
+    assertThat(standIn.tables("db"), is(empty()));
+  }
+
+  @Test
+  public void testCreateTable_hiveKeepsFailing_circuitOpens() {
+    // given
+    final HiveService sut = hiveService();
+    standIn.withFailureRate(1);
+    final HiveTable table = new HiveTable("db", "table", Collections.singletonList("id"), "/loc");
+
+    // when
+    int unavailable = 0;
+    for (int i = 0; i < guardConfig.getMinimumCalls() + 5; i++) {
+      try {
+        sut.createTable(table, alice);
+      } catch (HiveUnavailableException e) {
+        unavailable++;
+      } catch (RuntimeException e) {
+        // failure of the connection itself
+      }
+    }
+
+    // then
+    assertThat(unavailable, is(5));
+  }
+
+  private HiveService hiveService() {
+    pool = new HiveConnectionPool(standIn.client(), poolConfig,
+                                  new UserCredentials(new Config.Credentials()));
+    final HiveSessions sessions =
+        new HiveSessions(pool, new HiveMetrics(), new HiveGuard(guardConfig));
+    return new HiveService(new QueryBuilder(), sessions,
+                           new TableExistenceCache(new Config.ExistenceCache()), executor,
+                           new SlowOperationLog(new Config.SlowLog()), new Config.Teardown(),
+                           new Config.SchemaEvolution());
+  }
+}
@@ -15,26 +15,48 @@
  */
 package org.trustedanalytics.datasetpublisher.service;
 
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.trustedanalytics.datasetpublisher.Config;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
 import org.trustedanalytics.hadoop.config.client.helper.Hive;
 import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
 
+import java.net.SocketException;
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.security.auth.login.LoginException;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -55,6 +77,25 @@ public class HiveServiceTest {
   @Autowired
   private HiveService hiveService;
 
+  @Autowired
+  private HiveConnectionPool connectionPool;
+
+  @Autowired
+  private TableExistenceCache existenceCache;
+
+  @Autowired
+  private Config.SchemaEvolution schemaEvolution;
+
+  @Autowired
+  private SlowOperationLog slowLog;
+
+  @After
+  public void tearDown() {
+    connectionPool.clear();
+    existenceCache.invalidateAll();
+    hiveService.setEnrichers(Collections.emptyList());
+  }
+
   @Test
   public void testCreateTable() throws Exception {
     // given
@@ -87,6 +128,312 @@ public class HiveServiceTest {
     verify(queryBuilder).dropTable(hiveTable);
   }
 
+  @Test
+  public void testCreateTable_unchangedTable_skipsHive() throws Exception {
+    // given
+    final HiveTable hiveTable =
+        new HiveTable("db_unchanged", "table", Collections.emptyList(), "loc");
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    hiveService.createTable(hiveTable, userIdentity);
+
+    // when
+    hiveService.createTable(
+        new HiveTable("db_unchanged", "table", Collections.emptyList(), "loc"), userIdentity);
+
+    // then
+    // create database and create table
+    verify(stm, times(2)).executeUpdate(anyString());
+  }
+
+  @Test
+  public void testCreateTable_changedTableWithSameHash_createsAgain() throws Exception {
+    // given
+    // "Aa" and "BB" have the same hash code, so do the locations
+    final HiveTable hiveTable =
+        new HiveTable("db_collision", "table", Collections.emptyList(), "/org/Aa");
+    final HiveTable moved =
+        new HiveTable("db_collision", "table", Collections.emptyList(), "/org/BB");
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    hiveService.createTable(hiveTable, userIdentity);
+
+    // when
+    hiveService.createTable(moved, userIdentity);
+
+    // then
+    // create database and create table, create table again
+    verify(stm, times(3)).executeUpdate(anyString());
+  }
+
+  @Test
+  public void testCreateTable_droppedTable_createsAgain() throws Exception {
+    // given
+    final HiveTable hiveTable = new HiveTable("db_drop", "table", Collections.emptyList(), "loc");
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    hiveService.createTable(hiveTable, userIdentity);
+    hiveService.dropTable(hiveTable, userIdentity);
+
+    // when
+    hiveService.createTable(hiveTable, userIdentity);
+
+    // then
+    // create database and create table, drop table, create table
+    verify(stm, times(4)).executeUpdate(anyString());
+  }
+
+  @Test
+  public void testCreateTable_databaseCreatedOnce() throws Exception {
+    // given
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.createDatabase(any())).thenReturn("create database");
+
+    // when
+    hiveService.createTable(
+        new HiveTable("db_bootstrap", "one", Collections.emptyList(), "loc"), userIdentity);
+    hiveService.createTable(
+        new HiveTable("db_bootstrap", "two", Collections.emptyList(), "loc"), userIdentity);
+
+    // then
+    verify(stm, times(1)).executeUpdate("create database");
+    verify(stm, times(3)).executeUpdate(anyString());
+  }
+
+  @Test
+  public void testCreateTables_failedTable_reportedSeparately() throws Exception {
+    // given
+    final HiveTable first = new HiveTable("db_batch", "first", Collections.emptyList(), "loc");
+    final HiveTable failing = new HiveTable("db_batch", "failing", Collections.emptyList(), "loc");
+    final HiveTable other = new HiveTable("db_other", "other", Collections.emptyList(), "loc");
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.createTable(failing)).thenReturn("failing sql");
+    when(stm.executeUpdate("failing sql")).thenThrow(new SQLException("failure"));
+
+    // when
+    final List<Optional<Exception>> outcomes =
+        hiveService.createTables(Arrays.asList(first, failing, other), userIdentity);
+
+    // then
+    assertThat(outcomes.get(0).isPresent(), is(false));
+    assertThat(outcomes.get(1).isPresent(), is(true));
+    assertThat(outcomes.get(2).isPresent(), is(false));
+  }
+
+  @Test
+  public void testCreateTables_tableBeingCreated_creationShared() throws Exception {
+    // given
+    final HiveTable table = new HiveTable("db_shared", "table", Collections.emptyList(), "loc");
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.createTable(table)).thenReturn("create shared");
+    final CountDownLatch creating = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    when(stm.executeUpdate("create shared")).thenAnswer(invocation -> {
+      creating.countDown();
+      release.await();
+      return 0;
+    });
+    final ExecutorService requests = Executors.newFixedThreadPool(2);
+    final Future<?> single = requests.submit(() -> hiveService.createTable(table, userIdentity));
+    creating.await();
+
+    // when
+    final Future<List<Optional<Exception>>> batch = requests.submit(
+        () -> hiveService.createTables(Collections.singletonList(table), userIdentity));
+    // let the batch reach the table while it's being created
+    Thread.sleep(100);
+    release.countDown();
+    single.get();
+
+    // then
+    assertThat(batch.get().get(0).isPresent(), is(false));
+    verify(stm, times(1)).executeUpdate("create shared");
+    requests.shutdown();
+  }
+
+  @Test
+  public void testCreateTables_traceOfEachTable_hasEnrichAndConnectionStages() throws Exception {
+    // given
+    final HiveTable table =
+        new HiveTable("db_batch_trace", "table", Collections.emptyList(), "loc");
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    hiveService.setEnrichers(Collections.singletonList((enriched, identity) -> enriched));
+
+    // when
+    hiveService.createTables(Collections.singletonList(table), userIdentity);
+
+    // then
+    final ArgumentCaptor<OperationTrace> trace = ArgumentCaptor.forClass(OperationTrace.class);
+    verify(slowLog).record(eq(HiveMetrics.Operation.CREATE), same(table), trace.capture(),
+                           (Exception) isNull());
+    assertThat(trace.getValue().getStages().keySet(),
+               hasItems("enrich", HiveSessions.CONNECTION_STAGE, "create_table"));
+  }
+
+  @Test
+  public void testDropDatabase_dropsTablesThenDatabase() throws Exception {
+    // given
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    ResultSet tables = mock(ResultSet.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.showTables("db_teardown")).thenReturn("show tables");
+    when(queryBuilder.dropDatabase("db_teardown", false)).thenReturn("drop database");
+    when(stm.executeQuery("show tables")).thenReturn(tables);
+    when(tables.next()).thenReturn(true, true, false);
+    when(tables.getString(1)).thenReturn("one", "two");
+    final TeardownProgress progress = new TeardownProgress("db_teardown");
+
+    // when
+    hiveService.dropDatabase("db_teardown", userIdentity, progress);
+
+    // then
+    verify(stm, times(1)).executeUpdate("drop database");
+    assertThat(progress.getTables(), is(2));
+    assertThat(progress.getDropped(), is(2));
+    assertThat(progress.getFailed().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testDropDatabase_failedTable_keepsDatabase() throws Exception {
+    // given
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    ResultSet tables = mock(ResultSet.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.showTables("db_teardown_failed")).thenReturn("show tables");
+    when(queryBuilder.dropDatabase("db_teardown_failed", false)).thenReturn("drop database");
+    when(queryBuilder.dropTable(any()))
+        .thenAnswer(invocation -> "drop " + ((HiveTable) invocation.getArguments()[0]).tableName);
+    when(stm.executeQuery("show tables")).thenReturn(tables);
+    when(tables.next()).thenReturn(true, true, false);
+    when(tables.getString(1)).thenReturn("failing", "other");
+    when(stm.executeUpdate("drop failing")).thenThrow(new SQLException("failure"));
+    final TeardownProgress progress = new TeardownProgress("db_teardown_failed");
+
+    // when
+    hiveService.dropDatabase("db_teardown_failed", userIdentity, progress);
+
+    // then
+    verify(stm, times(1)).executeUpdate("drop other");
+    verify(stm, times(0)).executeUpdate("drop database");
+    assertThat(progress.getDropped(), is(1));
+    assertThat(progress.getFailed().keySet().contains("failing"), is(true));
+  }
+
+  @Test
+  public void testDropDatabase_connectionLost_restOfBatchFailsFast() throws Exception {
+    // given
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    ResultSet tables = mock(ResultSet.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.showTables("db_teardown_lost")).thenReturn("show tables");
+    when(queryBuilder.dropDatabase("db_teardown_lost", false)).thenReturn("drop database");
+    when(queryBuilder.dropTable(any()))
+        .thenAnswer(invocation -> "drop " + ((HiveTable) invocation.getArguments()[0]).tableName);
+    when(stm.executeQuery("show tables")).thenReturn(tables);
+    when(tables.next()).thenReturn(true, true, false);
+    when(tables.getString(1)).thenReturn("lost", "other");
+    when(stm.executeUpdate("drop lost"))
+        .thenThrow(new SQLException("lost", "08S01", new SocketException("Broken pipe")));
+    final TeardownProgress progress = new TeardownProgress("db_teardown_lost");
+
+    // when
+    hiveService.dropDatabase("db_teardown_lost", userIdentity, progress);
+
+    // then
+    verify(stm, times(0)).executeUpdate("drop other");
+    verify(stm, times(0)).executeUpdate("drop database");
+    assertThat(progress.getDropped(), is(0));
+    assertThat(progress.getFailed().keySet(), containsInAnyOrder("lost", "other"));
+  }
+
+  @Test
+  public void testDropDatabase_ddlExecutionError_teardownContinues() throws Exception {
+    // given
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    ResultSet tables = mock(ResultSet.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.showTables("db_teardown_ddl")).thenReturn("show tables");
+    when(queryBuilder.dropDatabase("db_teardown_ddl", false)).thenReturn("drop database");
+    when(queryBuilder.dropTable(any()))
+        .thenAnswer(invocation -> "drop " + ((HiveTable) invocation.getArguments()[0]).tableName);
+    when(stm.executeQuery("show tables")).thenReturn(tables);
+    when(tables.next()).thenReturn(true, true, false);
+    when(tables.getString(1)).thenReturn("locked", "other");
+    // Hive reports failures of DDL tasks with connection exception state
+    when(stm.executeUpdate("drop locked")).thenThrow(new SQLException(
+        "FAILED: Execution Error, return code 1 from org.apache.hadoop.hive.ql.exec.DDLTask",
+        "08S01"));
+    final TeardownProgress progress = new TeardownProgress("db_teardown_ddl");
+
+    // when
+    hiveService.dropDatabase("db_teardown_ddl", userIdentity, progress);
+
+    // then
+    verify(stm, times(1)).executeUpdate("drop other");
+    assertThat(progress.getDropped(), is(1));
+    assertThat(progress.getFailed().keySet().contains("locked"), is(true));
+  }
+
+  @Test
+  public void testCreateTable_schemaEvolution_existingTableAltered() throws Exception {
+    // given
+    final HiveTable hiveTable =
+        new HiveTable("db_evolution", "table", Arrays.asList("one", "two"), "/org/data");
+    Connection connection = mock(Connection.class);
+    Statement stm = mock(Statement.class);
+    ResultSet existing = mock(ResultSet.class);
+    ResultSet description = mock(ResultSet.class);
+    when(connection.createStatement()).thenReturn(stm);
+    when(hiveClient.getConnection(userIdentity)).thenReturn(connection);
+    when(queryBuilder.showTable(hiveTable)).thenReturn("show table");
+    when(queryBuilder.describeTable(hiveTable)).thenReturn("describe table");
+    when(queryBuilder.alterTable(any(), any())).thenReturn(Arrays.asList("alter table"));
+    when(stm.executeQuery("show table")).thenReturn(existing);
+    when(stm.executeQuery("describe table")).thenReturn(description);
+    when(existing.next()).thenReturn(true);
+    when(description.next()).thenReturn(true, false);
+    when(description.getString(1)).thenReturn("one");
+    when(description.getString(2)).thenReturn("string");
+    schemaEvolution.setEnabled(true);
+
+    // when
+    try {
+      hiveService.createTable(hiveTable, userIdentity);
+    } finally {
+      schemaEvolution.setEnabled(false);
+    }
+
+    // then
+    verify(stm).executeUpdate("alter table");
+    verify(queryBuilder, times(0)).createTable(hiveTable);
+  }
+
   @Test(expected = RuntimeException.class)
   public void testCreateTable_executionQueryException_propagatesAsRuntime() throws Exception {
     //given
@@ -125,5 +472,42 @@ public class HiveServiceTest {
     public Hive hiveClient(JwtToken token) {
       return mock(Hive.class);
     }
+
+    @Bean
+    public HiveConnectionPool connectionPool(Hive hiveClient) {
+      return new HiveConnectionPool(hiveClient, new Config.HivePool(),
+                                    new UserCredentials(new Config.Credentials()));
+    }
+
+    @Bean
+    public HiveSessions sessions(HiveConnectionPool connectionPool) {
+      return new HiveSessions(connectionPool, new HiveMetrics(),
+                              new HiveGuard(new Config.Guard()));
+    }
+
+    @Bean
+    public ExecutorService batchExecutor() {
+      return Executors.newFixedThreadPool(2);
+    }
+
+    @Bean
+    public TableExistenceCache existenceCache() {
+      return new TableExistenceCache(new Config.ExistenceCache());
+    }
+
+    @Bean
+    public SlowOperationLog slowLog() {
+      return mock(SlowOperationLog.class);
+    }
+
+    @Bean
+    public Config.Teardown teardown() {
+      return new Config.Teardown();
+    }
+
+    @Bean
+    public Config.SchemaEvolution schemaEvolution() {
+      return new Config.SchemaEvolution();
+    }
   }
 }
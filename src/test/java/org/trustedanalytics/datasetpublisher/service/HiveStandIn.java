@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.trustedanalytics.hadoop.config.client.helper.Hive;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in of HiveServer2 for tests which need no cluster: JDBC connections to an in-memory
+ * catalog of databases and tables, which understand statements issued by the service. Opening a
+ * connection and executing a statement take configurable time and fail at configurable rate,
+ * with SQL state of a broken connection.
+ */
+public class HiveStandIn {
+
+  private static final Pattern CREATE_DATABASE =
+      Pattern.compile("create database if not exists (\\w+)");
+  private static final Pattern CREATE_TABLE =
+      Pattern.compile("create external table if not exists (\\w+)\\.(\\w+) .*", Pattern.DOTALL);
+  private static final Pattern DROP_TABLE = Pattern.compile("drop table if exists (\\w+)\\.(\\w+)");
+  private static final Pattern DROP_DATABASE =
+      Pattern.compile("drop database if exists (\\w+)( cascade)?");
+  private static final Pattern SHOW_TABLES =
+      Pattern.compile("show tables in (\\w+)(?: like '(\\w+)')?");
+
+  private final ConcurrentMap<String, Set<String>> databases = new ConcurrentHashMap<>();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger statements = new AtomicInteger();
+  private volatile long connectMillis;
+  private volatile long statementMillis;
+  private volatile double failureRate;
+
+  /**
+   * @param connectMillis time it takes to open a connection, i.e. to log in
+   * @return this stand-in
+   */
+  public HiveStandIn withConnectMillis(long connectMillis) {
+    this.connectMillis = connectMillis;
+    return this;
+  }
+
+  /**
+   * @param statementMillis time it takes to execute a statement
+   * @return this stand-in
+   */
+  public HiveStandIn withStatementMillis(long statementMillis) {
+    this.statementMillis = statementMillis;
+    return this;
+  }
+
+  /**
+   * @param failureRate share of connection attempts and statements which fail, 0 to 1
+   * @return this stand-in
+   */
+  public HiveStandIn withFailureRate(double failureRate) {
+    this.failureRate = failureRate;
+    return this;
+  }
+
+  /**
+   * @return Hive client whose connections are connections of this stand-in
+   */
+  public Hive client() {
+    final Hive client = mock(Hive.class);
+    try {
+      when(client.getConnection(any(JwtToken.class))).thenAnswer(invocation -> connect());
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    return client;
+  }
+
+  /**
+   * @return number of connections opened so far
+   */
+  public int getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * @return number of statements executed so far, including failed ones
+   */
+  public int getStatements() {
+    return statements.get();
+  }
+
+  /**
+   * @param databaseName database name
+   * @return names of tables of the database, empty if there's no such database
+   */
+  public Set<String> tables(String databaseName) {
+    final Set<String> tables = databases.get(databaseName);
+    if (tables == null) {
+      return Collections.emptySet();
+    }
+    synchronized (tables) {
+      return new TreeSet<>(tables);
+    }
+  }
+
+  private Connection connect() throws SQLException {
+    delay(connectMillis);
+    connections.incrementAndGet();
+    final boolean[] closed = new boolean[1];
+    return proxy(Connection.class, (method, args) -> {
+      switch (method.getName()) {
+        case "createStatement":
+          return statement();
+        case "close":
+          closed[0] = true;
+          return null;
+        case "isClosed":
+          return closed[0];
+        default:
+          return null;
+      }
+    });
+  }
+
+  private Statement statement() {
+    return proxy(Statement.class, (method, args) -> {
+      switch (method.getName()) {
+        case "execute":
+          execute((String) args[0]);
+          return false;
+        case "executeUpdate":
+          execute((String) args[0]);
+          return 0;
+        case "executeQuery":
+          return resultSet(execute((String) args[0]));
+        default:
+          return null;
+      }
+    });
+  }
+
+  private List<String> execute(String sql) throws SQLException {
+    statements.incrementAndGet();
+    delay(statementMillis);
+    Matcher matcher;
+    if ((matcher = CREATE_DATABASE.matcher(sql)).matches()) {
+      databases.computeIfAbsent(matcher.group(1), name -> new TreeSet<>());
+    } else if ((matcher = CREATE_TABLE.matcher(sql)).matches()) {
+      final Set<String> tables = database(matcher.group(1));
+      synchronized (tables) {
+        tables.add(matcher.group(2));
+      }
+    } else if ((matcher = DROP_TABLE.matcher(sql)).matches()) {
+      final Set<String> tables = database(matcher.group(1));
+      synchronized (tables) {
+        tables.remove(matcher.group(2));
+      }
+    } else if ((matcher = DROP_DATABASE.matcher(sql)).matches()) {
+      if (!tables(matcher.group(1)).isEmpty() && matcher.group(2) == null) {
+        throw new SQLException("Database " + matcher.group(1) + " is not empty", "42000");
+      }
+      databases.remove(matcher.group(1));
+    } else if ((matcher = SHOW_TABLES.matcher(sql)).matches()) {
+      return new ArrayList<>(listed(database(matcher.group(1)), matcher.group(2)));
+    }
+    // anything else, e.g. validation query or analyze, is accepted as it is
+    return Collections.emptyList();
+  }
+
+  private static Set<String> listed(Set<String> tables, String like) {
+    final Set<String> listed = new TreeSet<>();
+    synchronized (tables) {
+      for (String table : tables) {
+        if (like == null || like.equals(table)) {
+          listed.add(table);
+        }
+      }
+    }
+    return listed;
+  }
+
+  private Set<String> database(String databaseName) throws SQLException {
+    final Set<String> tables = databases.get(databaseName);
+    if (tables == null) {
+      throw new SQLException("Database does not exist: " + databaseName, "42000", 10072);
+    }
+    return tables;
+  }
+
+  private ResultSet resultSet(List<String> rows) {
+    final Iterator<String> iterator = rows.iterator();
+    final String[] current = new String[1];
+    return proxy(ResultSet.class, (method, args) -> {
+      switch (method.getName()) {
+        case "next":
+          current[0] = iterator.hasNext() ? iterator.next() : null;
+          return current[0] != null;
+        case "getString":
+          return current[0];
+        default:
+          return null;
+      }
+    });
+  }
+
+  private void delay(long millis) throws SQLException {
+    if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+      throw new SQLException("Injected failure", "08S01");
+    }
+    if (millis > 0) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted", "08S01", e);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    return (T) Proxy.newProxyInstance(HiveStandIn.class.getClassLoader(), new Class<?>[]{type},
+        (proxy, method, args) -> {
+          if (method.getDeclaringClass() == Object.class) {
+            return objectMethod(proxy, method, args);
+          }
+          final Object result = handler.invoke(method, args);
+          return result != null || !method.getReturnType().isPrimitive()
+                 ? result : defaultOf(method.getReturnType());
+        });
+  }
+
+  private static Object objectMethod(Object proxy, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      default:
+        return "HiveStandIn." + proxy.getClass().getInterfaces()[0].getSimpleName();
+    }
+  }
+
+  private static Object defaultOf(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    }
+    if (type == void.class) {
+      return null;
+    }
+    if (type == long.class) {
+      return 0L;
+    }
+    if (type == double.class) {
+      return 0d;
+    }
+    if (type == float.class) {
+      return 0f;
+    }
+    if (type == short.class) {
+      return (short) 0;
+    }
+    if (type == byte.class) {
+      return (byte) 0;
+    }
+    if (type == char.class) {
+      return (char) 0;
+    }
+    return 0;
+  }
+
+  @FunctionalInterface
+  private interface Handler {
+    Object invoke(Method method, Object[] args) throws SQLException;
+  }
+}
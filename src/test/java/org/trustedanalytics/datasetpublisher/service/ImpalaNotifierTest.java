@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+
+import org.apache.commons.pool2.ObjectPool;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ImpalaNotifierTest {
+
+  private final HiveTable one = new HiveTable("db", "one", ImmutableList.of("a"), "/org/one");
+  private final HiveTable two = new HiveTable("db", "two", ImmutableList.of("a"), "/org/two");
+
+  private Config.Impala config;
+  private ObjectPool<Connection> connections;
+  private Connection connection;
+  private Statement statement;
+  private ScheduledExecutorService executor;
+  private ImpalaNotifier sut;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    config = new Config.Impala();
+    config.setEnabled(true);
+    connections = mock(ObjectPool.class);
+    connection = mock(Connection.class);
+    statement = mock(Statement.class);
+    when(connections.borrowObject()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+    executor = mock(ScheduledExecutorService.class);
+    sut = new ImpalaNotifier(new QueryBuilder(), new HiveMetrics(), config, connections, executor);
+  }
+
+  @Test
+  public void testNotify_tablesWithinWindow_notifiedTogetherOnce() throws Exception {
+    // given
+    sut.tableCreated(one, null);
+    sut.tableCreated(two, null);
+    sut.tableRequested(one, null);
+
+    // when
+    sut.notifyPending();
+
+    // then
+    verify(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    verify(connections).borrowObject();
+    verify(statement).execute("invalidate metadata db.one");
+    verify(statement).execute("invalidate metadata db.two");
+    verify(statement, times(2)).execute(anyString());
+    verify(connections).returnObject(connection);
+  }
+
+  @Test
+  public void testNotify_schedulingRejected_scheduledWithNextChange() throws Exception {
+    // given
+    when(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+        .thenThrow(new RejectedExecutionException("shutting down"))
+        .thenReturn(null);
+    sut.tableCreated(one, null);
+
+    // when
+    sut.tableCreated(two, null);
+    sut.notifyPending();
+
+    // then
+    verify(executor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    verify(statement).execute("invalidate metadata db.one");
+    verify(statement).execute("invalidate metadata db.two");
+  }
+
+  @Test
+  public void testNotify_knownTable_refreshed() throws Exception {
+    // given
+    sut.tableCreated(one, null);
+    sut.notifyPending();
+
+    // when
+    sut.tableRequested(one, null);
+    sut.notifyPending();
+
+    // then
+    final InOrder inOrder = inOrder(statement);
+    inOrder.verify(statement).execute("invalidate metadata db.one");
+    inOrder.verify(statement).execute("refresh db.one");
+    verify(executor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void testNotify_refreshFailed_invalidatedNextTime() throws Exception {
+    // given
+    sut.tableCreated(one, null);
+    sut.notifyPending();
+    when(statement.execute("refresh db.one")).thenThrow(new SQLException("unknown table"));
+    sut.tableCreated(one, null);
+    sut.notifyPending();
+
+    // when
+    sut.tableCreated(one, null);
+    sut.notifyPending();
+
+    // then
+    verify(statement, times(2)).execute("invalidate metadata db.one");
+    verify(connections).invalidateObject(connection);
+  }
+
+  @Test
+  public void testNotify_tableDroppedWithinWindow_notNotified() throws Exception {
+    // given
+    sut.tableCreated(one, null);
+    sut.tableCreated(two, null);
+    sut.databaseDropped("db", null);
+
+    // when
+    sut.notifyPending();
+
+    // then
+    verify(connections, never()).borrowObject();
+  }
+
+  @Test
+  public void testNotify_impalaUnavailable_tablesInvalidatedNextTime() throws Exception {
+    // given
+    sut.tableCreated(one, null);
+    sut.notifyPending();
+    when(connections.borrowObject()).thenThrow(new SQLException("unavailable"))
+        .thenReturn(connection);
+    sut.tableRequested(one, null);
+    sut.notifyPending();
+
+    // when
+    sut.tableRequested(one, null);
+    sut.notifyPending();
+
+    // then
+    verify(statement, times(2)).execute("invalidate metadata db.one");
+    verify(statement, never()).execute("refresh db.one");
+  }
+
+  @Test
+  public void testNotify_disabled_nothingScheduled() throws Exception {
+    // given
+    config.setEnabled(false);
+
+    // when
+    sut.tableCreated(one, null);
+
+    // then
+    verify(executor, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.datasetpublisher.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class JobServiceTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private JobService sut;
+
+  @Before
+  public void setUp() {
+    final Config.Jobs config = new Config.Jobs();
+    config.setThreads(1);
+    config.setQueueCapacity(1);
+    sut = new JobService(config);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    sut.destroy();
+  }
+
+  @Test
+  public void testSubmit_succeeds_keepsResult() throws Exception {
+    // when
+    final Job job = sut.submit("alice", () -> "result");
+
+    // then
+    awaitDone(job);
+    assertThat(job.getStatus(), is(Job.Status.SUCCEEDED));
+    assertThat(job.getResult(), is("result"));
+    assertThat(sut.find(job.getId(), "alice").get(), is(job));
+  }
+
+  @Test
+  public void testSubmit_fails_keepsError() throws Exception {
+    // when
+    final Job job = sut.submit("alice", () -> {
+      throw new IllegalStateException("failure");
+    });
+
+    // then
+    awaitDone(job);
+    assertThat(job.getStatus(), is(Job.Status.FAILED));
+    assertThat(job.getError(), is("failure"));
+  }
+
+  @Test
+  public void testCancel_queuedJob_neverRuns() throws Exception {
+    // given
+    final CountDownLatch started = new CountDownLatch(1);
+    sut.submit("alice", () -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    });
+    started.await(10, TimeUnit.SECONDS);
+    final Job queued = sut.submit("alice", () -> "result");
+
+    // when
+    sut.cancel(queued.getId(), "alice");
+    release.countDown();
+
+    // then
+    assertThat(queued.getStatus(), is(Job.Status.CANCELLED));
+    assertThat(queued.getResult(), is(nullValue()));
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testSubmit_queueFull_rejects() throws Exception {
+    // given
+    final CountDownLatch started = new CountDownLatch(1);
+    sut.submit("alice", () -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    });
+    started.await(10, TimeUnit.SECONDS);
+    sut.submit("alice", () -> "queued");
+
+    // when
+    sut.submit("alice", () -> "rejected");
+  }
+
+  @Test
+  public void testFind_unknownJob_returnsEmpty() {
+    assertThat(sut.find("unknown", "alice").isPresent(), is(false));
+  }
+
+  @Test
+  public void testFind_jobOfOtherUser_returnsEmpty() {
+    // given
+    final Job job = sut.submit("alice", () -> "result");
+
+    // when
+    final boolean found = sut.find(job.getId(), "bob").isPresent();
+
+    // then
+    assertThat(found, is(false));
+  }
+
+  @Test
+  public void testCancel_jobOfOtherUser_notCancelled() throws Exception {
+    // given
+    final CountDownLatch started = new CountDownLatch(1);
+    final Job job = sut.submit("alice", () -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    });
+    started.await(10, TimeUnit.SECONDS);
+
+    // when
+    final boolean cancelled = sut.cancel(job.getId(), "bob").isPresent();
+
+    // then
+    assertThat(cancelled, is(false));
+    assertThat(job.getStatus(), is(Job.Status.RUNNING));
+  }
+
+  private static void awaitDone(Job job) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while ((job.getStatus() == Job.Status.QUEUED || job.getStatus() == Job.Status.RUNNING)
+           && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
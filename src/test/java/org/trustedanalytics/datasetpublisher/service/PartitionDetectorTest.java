@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+public class PartitionDetectorTest {
+
+  private static final String ROOT = "hdfs://nameservice/org/dataset";
+
+  private final JwtToken identity = mock(JwtToken.class);
+  private DatasetSource datasetSource;
+  private Config.Partitioning config;
+
+  @Before
+  public void setUp() throws IOException {
+    datasetSource = mock(DatasetSource.class);
+    when(datasetSource.listDirectories(anyString(), anyString(), any(JwtToken.class)))
+        .thenReturn(Collections.emptyList());
+    config = new Config.Partitioning();
+    config.setEnabled(true);
+  }
+
+  @Test
+  public void testEnrich_keyValueDirectories_partitionedByKeys() throws IOException {
+    // given
+    givenDirectories(ROOT, "dt=2016-01-01", "dt=2016-01-02", "_temporary");
+    givenDirectories(ROOT + "/dt=2016-01-01", "country=pl");
+    givenDirectories(ROOT + "/dt=2016-01-02", "country=pl", "country=us");
+    final HiveTable table = table(ROOT + "/dt=2016-01-02/country=us/000000_0");
+
+    // when
+    final HiveTable result = detector().enrich(table, identity);
+
+    // then
+    assertThat(result.location, is("/org/dataset"));
+    assertThat(result.partitionColumns,
+               contains(Column.string("dt"), Column.string("country")));
+    assertThat(result.partitions.stream().map(partition -> partition.location)
+                   .collect(Collectors.toList()), contains(
+        "/org/dataset/dt=2016-01-01/country=pl",
+        "/org/dataset/dt=2016-01-02/country=pl",
+        "/org/dataset/dt=2016-01-02/country=us"));
+    assertThat(result.partitions.get(2).values, contains("2016-01-02", "us"));
+  }
+
+  @Test
+  public void testEnrich_keysNotValidColumnNames_columnsNamedByIdentifierRules()
+      throws IOException {
+    // given
+    final String longKey = "k" + Strings.repeat("e", 70);
+    givenDirectories(ROOT, "date=2016-01-01");
+    givenDirectories(ROOT + "/date=2016-01-01", "_src=a");
+    givenDirectories(ROOT + "/date=2016-01-01/_src=a", longKey + "=1");
+    final HiveTable table = table(ROOT + "/date=2016-01-01/_src=a/" + longKey + "=1/000000_0");
+
+    // when
+    final HiveTable result = detector().enrich(table, identity);
+
+    // then
+    assertThat(result.partitionColumns, contains(Column.string("date_"),
+        Column.string("x_src"), Column.string(longKey.substring(0, 64))));
+    assertThat(result.partitions.get(0).location,
+               is("/org/dataset/date=2016-01-01/_src=a/" + longKey + "=1"));
+  }
+
+  @Test
+  public void testEnrich_dateDirectories_partitionedByDateLevels() throws IOException {
+    // given
+    config.setDatePattern("yyyy/MM/dd");
+    givenDirectories(ROOT, "2016");
+    givenDirectories(ROOT + "/2016", "01");
+    givenDirectories(ROOT + "/2016/01", "01", "02");
+    final HiveTable table = table(ROOT + "/2016/01/02/000000_0");
+
+    // when
+    final HiveTable result = detector().enrich(table, identity);
+
+    // then
+    assertThat(result.location, is("/org/dataset"));
+    assertThat(result.partitionColumns, contains(
+        Column.string("year"), Column.string("month"), Column.string("day")));
+    assertThat(result.partitions.get(1).values, contains("2016", "01", "02"));
+    assertThat(result.partitions.get(1).location, is("/org/dataset/2016/01/02"));
+  }
+
+  @Test
+  public void testEnrich_differentKeysInBranches_leftUnpartitioned() throws IOException {
+    // given
+    givenDirectories(ROOT, "dt=2016-01-01", "dt=2016-01-02");
+    givenDirectories(ROOT + "/dt=2016-01-01", "country=pl");
+    final HiveTable table = table(ROOT + "/dt=2016-01-01/country=pl/000000_0");
+
+    // when
+    final HiveTable result = detector().enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+  }
+
+  @Test
+  public void testEnrich_plainDirectory_leftUnpartitioned() throws IOException {
+    // given
+    givenDirectories(ROOT, "archive");
+    final HiveTable table = table(ROOT + "/000000_0");
+
+    // when
+    final HiveTable result = detector().enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+    assertThat(result.partitions, is(empty()));
+  }
+
+  @Test
+  public void testEnrich_tooManyPartitions_leftUnpartitioned() throws IOException {
+    // given
+    config.setMaxPartitions(1);
+    givenDirectories(ROOT, "dt=2016-01-01", "dt=2016-01-02");
+    final HiveTable table = table(ROOT + "/dt=2016-01-01/000000_0");
+
+    // when
+    final HiveTable result = detector().enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+  }
+
+  @Test
+  public void testEnrich_listingFails_leftUnpartitioned() throws IOException {
+    // given
+    when(datasetSource.listDirectories(anyString(), anyString(), any(JwtToken.class)))
+        .thenThrow(new IOException("unavailable"));
+    final HiveTable table = table(ROOT + "/dt=2016-01-01/000000_0");
+
+    // when
+    final HiveTable result = detector().enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+  }
+
+  private HiveTable table(String sourceUri) {
+    return new HiveTable("db", "table", ImmutableList.of("id", "name"),
+                         sourceUri.substring(sourceUri.indexOf("/org"), sourceUri.lastIndexOf('/')),
+                         sourceUri);
+  }
+
+  private PartitionDetector detector() {
+    return new PartitionDetector(datasetSource, config, () -> ImmutableSet.of("date"));
+  }
+
+  private void givenDirectories(String parent, String... names) throws IOException {
+    when(datasetSource.listDirectories(parent, "db", identity)).thenReturn(Arrays.stream(names)
+        .map(name -> parent + "/" + name)
+        .collect(Collectors.toList()));
+  }
+}
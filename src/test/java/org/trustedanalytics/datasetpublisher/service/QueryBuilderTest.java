@@ -16,9 +16,15 @@
 package org.trustedanalytics.datasetpublisher.service;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.ColumnarCopy;
 import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.Partition;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
 
 import com.google.common.collect.ImmutableList;
 
@@ -26,6 +32,8 @@ import org.junit.Test;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class QueryBuilderTest {
 
@@ -73,4 +81,273 @@ public class QueryBuilderTest {
             databaseName + "." + tableName, columns.get(0), columns.get(1), location)));
     }
 
+    @Test
+    public void testCreateColumnarCopyQuery() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final ColumnarCopy copy = new ColumnarCopy(databaseName, tableName + "_orc",
+            table.getFullyQualifiedName(), ColumnarCopy.Format.ORC, table.getSignature());
+
+        // when
+        final String sql = builder.createColumnarCopy(table, copy, "ZLIB");
+
+        // then
+        assertThat(sql, is(
+            "create table if not exists testDb.testTable_orc stored as orc " +
+                "tblproperties ('orc.compress'='ZLIB', 'dataset_publisher.source'='testDb.testTable') " +
+                "as select * from testDb.testTable"));
+    }
+
+    @Test
+    public void testCreateTableQuery_typedColumns() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable typed = table.withColumns(ImmutableList.of(
+            new Column("one", "bigint"), new Column("two", "timestamp")));
+
+        // when
+        final String sql = builder.createTable(typed);
+
+        // then
+        assertThat(sql, is(String.format(
+            "create external table if not exists %s (one bigint,two timestamp) row format delimited fields terminated by ',' stored as textfile location '%s'",
+            databaseName + "." + tableName, location)));
+    }
+
+    @Test
+    public void testCreateTableQuery_tabSeparatedWithHeader() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable formatted = table.withFormat(new TextFormat('\t', true, "gzip"));
+
+        // when
+        final String sql = builder.createTable(formatted);
+
+        // then
+        assertThat(sql, is(String.format(
+            "create external table if not exists %s (one string,two string) row format delimited fields terminated by '\\t' stored as textfile location '%s' tblproperties ('skip.header.line.count'='1')",
+            databaseName + "." + tableName, location)));
+    }
+
+    @Test
+    public void testCreateTableQuery_semicolonSeparated_escaped() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable formatted = table.withFormat(new TextFormat(';', false, null));
+
+        // when
+        final String sql = builder.createTable(formatted);
+
+        // then
+        assertThat(sql, is(String.format(
+            "create external table if not exists %s (one string,two string) row format delimited fields terminated by '\\073' stored as textfile location '%s'",
+            databaseName + "." + tableName, location)));
+    }
+
+    @Test
+    public void testCreateTableQuery_partitioned() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable partitioned = table.withPartitions(location,
+            ImmutableList.of(Column.string("dt")), ImmutableList.of());
+
+        // when
+        final String sql = builder.createTable(partitioned);
+
+        // then
+        assertThat(sql, is(String.format(
+            "create external table if not exists %s (one string,two string) partitioned by (dt string) row format delimited fields terminated by ',' stored as textfile location '%s'",
+            databaseName + "." + tableName, location)));
+    }
+
+    @Test
+    public void testAddPartitionsQueries() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable partitioned = table.withPartitions(location,
+            ImmutableList.of(Column.string("dt"), Column.string("country")),
+            ImmutableList.of(
+                new Partition(ImmutableList.of("2016-01-01", "pl"), location + "/dt=2016-01-01/country=pl"),
+                new Partition(ImmutableList.of("2016-01-02", "o'k"), location + "/dt=2016-01-02/country=o'k")));
+
+        // when
+        final List<String> sql = builder.addPartitions(partitioned);
+
+        // then
+        assertThat(sql, contains(String.format(
+            "alter table %s add if not exists " +
+                "partition (dt='2016-01-01',country='pl') location '%s/dt=2016-01-01/country=pl' " +
+                "partition (dt='2016-01-02',country='o\\'k') location '%s/dt=2016-01-02/country=o\\'k'",
+            databaseName + "." + tableName, location, location)));
+    }
+
+    @Test
+    public void testAddPartitionsQueries_quotesInLocation_escaped() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable partitioned = table.withPartitions(location,
+            ImmutableList.of(Column.string("dt")),
+            ImmutableList.of(new Partition(ImmutableList.of("x"),
+                location + "/dt=x' location '/tmp\\")));
+
+        // when
+        final List<String> sql = builder.addPartitions(partitioned);
+
+        // then
+        assertThat(sql, contains(String.format(
+            "alter table %s add if not exists partition (dt='x') location '%s/dt=x\\' location \\'/tmp\\\\'",
+            databaseName + "." + tableName, location)));
+    }
+
+    @Test
+    public void testAddPartitionsQueries_manyPartitions_registeredInBatches() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable partitioned = table.withPartitions(location,
+            ImmutableList.of(Column.string("id")),
+            IntStream.range(0, QueryBuilder.PARTITIONS_PER_STATEMENT + 1)
+                .mapToObj(i -> new Partition(ImmutableList.of("" + i), location + "/id=" + i))
+                .collect(Collectors.toList()));
+
+        // when
+        final List<String> sql = builder.addPartitions(partitioned);
+
+        // then
+        assertThat(sql, hasSize(2));
+    }
+
+    @Test
+    public void testAddPartitionsQueries_notPartitioned_noQueries() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+
+        // when
+        final List<String> sql = builder.addPartitions(table);
+
+        // then
+        assertThat(sql, hasSize(0));
+    }
+
+    @Test
+    public void testAnalyzeTableQuery_partitioned() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable partitioned = table.withPartitions(location,
+            ImmutableList.of(Column.string("year"), Column.string("month")), ImmutableList.of());
+
+        // when
+        final String sql = builder.analyzeTable(partitioned);
+
+        // then
+        assertThat(sql, is(String.format("analyze table %s partition (year,month) compute statistics",
+            databaseName + "." + tableName)));
+    }
+
+    @Test
+    public void testDropDatabaseQuery_cascade() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+
+        // when
+        final String sql = builder.dropDatabase(databaseName, true);
+
+        // then
+        assertThat(sql, is("drop database if exists " + databaseName + " cascade"));
+    }
+
+    @Test
+    public void testShowTablesQuery() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+
+        // when
+        final String sql = builder.showTables(databaseName);
+
+        // then
+        assertThat(sql, is("show tables in " + databaseName));
+    }
+
+    @Test
+    public void testAlterTableQuery_appendedColumns_addColumns() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable published = new HiveTable(databaseName, tableName, columns, "/org/data");
+        final HiveTable live = new HiveTable(databaseName, tableName, ImmutableList.of("one"),
+            "hdfs://nameservice1/org/data");
+
+        // when
+        final List<String> sql = builder.alterTable(live, published);
+
+        // then
+        assertThat(sql, contains("alter table testDb.testTable add columns (two string)"));
+    }
+
+    @Test
+    public void testAlterTableQuery_changedColumnsAndLocation_replaceColumnsAndSetLocation()
+        throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable published = new HiveTable(databaseName, tableName, columns, "/org/data");
+        final HiveTable live = new HiveTable(databaseName, tableName, ImmutableList.of("one"),
+            "hdfs://nameservice1/org/old")
+            .withColumns(ImmutableList.of(new Column("one", "int")));
+
+        // when
+        final List<String> sql = builder.alterTable(live, published);
+
+        // then
+        assertThat(sql, contains(
+            "alter table testDb.testTable replace columns (one string,two string)",
+            "alter table testDb.testTable set location '/org/data'"));
+    }
+
+    @Test
+    public void testAlterTableQuery_formatChanged_setProperties() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable published = new HiveTable(databaseName, tableName, columns, "/org/data")
+            .withFormat(new TextFormat('|', true, null));
+        final HiveTable live = new HiveTable(databaseName, tableName, columns, "/org/data");
+
+        // when
+        final List<String> sql = builder.alterTable(live, published);
+
+        // then
+        assertThat(sql, contains(
+            "alter table testDb.testTable set serdeproperties " +
+                "('field.delim'='|', 'serialization.format'='|')",
+            "alter table testDb.testTable set tblproperties ('skip.header.line.count'='1')"));
+    }
+
+    @Test
+    public void testAlterTableQuery_partitionedFormatChanged_delimiterKept() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable published = new HiveTable(databaseName, tableName, columns, "/org/data")
+            .withPartitions("/org/data", ImmutableList.of(Column.string("dt")), ImmutableList.of())
+            .withFormat(new TextFormat('|', true, null));
+        final HiveTable live = new HiveTable(databaseName, tableName, columns, "/org/data");
+
+        // when
+        final List<String> sql = builder.alterTable(live, published);
+
+        // then
+        assertThat(sql, contains(
+            "alter table testDb.testTable set tblproperties ('skip.header.line.count'='1')"));
+    }
+
+    @Test
+    public void testAlterTableQuery_sameDefinition_noStatements() throws SQLException {
+        // given
+        final QueryBuilder builder = new QueryBuilder();
+        final HiveTable published = new HiveTable(databaseName, tableName, columns, "/org/data");
+        final HiveTable live = new HiveTable(databaseName, tableName, ImmutableList.of("ONE", "two"),
+            "hdfs://nameservice1/org/data/");
+
+        // when
+        final List<String> sql = builder.alterTable(live, published);
+
+        // then
+        assertThat(sql, hasSize(0));
+    }
 }
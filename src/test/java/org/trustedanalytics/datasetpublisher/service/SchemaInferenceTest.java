@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class SchemaInferenceTest {
+
+  private static final String URI = "hdfs://nameservice/org/dataset/000000_1";
+
+  private final HiveTable table = new HiveTable("db", "table",
+      ImmutableList.of("id", "price", "active", "created", "name", "empty"), "/org/dataset", URI)
+      .withFormat(new TextFormat(',', true, null));
+
+  private final JwtToken identity = mock(JwtToken.class);
+  private DatasetSource datasetSource;
+  private Config.Inference config;
+  private SchemaInference sut;
+
+  @Before
+  public void setUp() {
+    datasetSource = mock(DatasetSource.class);
+    config = new Config.Inference();
+    config.setEnabled(true);
+    sut = new SchemaInference(datasetSource, config);
+  }
+
+  @Test
+  public void testEnrich_typedValues_inferColumnTypes() throws IOException {
+    // given
+    givenFile("id,price,active,created,name,empty\n" +
+              "1,9.99,true,2016-01-02 10:11:12,\"Smith, John\",\n" +
+              "2,10,FALSE,2016-01-03 00:00:00.5,Doe,\\N\n" +
+              "-3,,true,,\"say \"\"hi\"\"\",");
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result.columns, contains(
+        new Column("id", "bigint"),
+        new Column("price", "double"),
+        new Column("active", "boolean"),
+        new Column("created", "timestamp"),
+        new Column("name", "string"),
+        new Column("empty", "string")));
+  }
+
+  @Test
+  public void testEnrich_valueOfOtherTypeBeyondSample_ignored() throws IOException {
+    // given
+    config.setSampleRows(2);
+    givenFile("id,price,active,created,name,empty\n1,1,1,1,1,1\n2,2,2,2,2,2\nx,x,x,x,x,x\n");
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result.columns.get(0), is(new Column("id", "bigint")));
+  }
+
+  @Test
+  public void testEnrich_numberOutOfBigintRange_double() throws IOException {
+    // given
+    givenFile("id,price,active,created,name,empty\n99999999999999999999,,,,,\n");
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result.columns.get(0), is(new Column("id", "double")));
+  }
+
+  @Test
+  public void testEnrich_withoutHeader_firstRecordSampled() throws IOException {
+    // given
+    givenFile("1,2.5,true,,,\n2,3,false,,,\n");
+    final HiveTable headerless = table.withFormat(new TextFormat(',', false, null));
+
+    // when
+    final HiveTable result = sut.enrich(headerless, identity);
+
+    // then
+    assertThat(result.columns.get(0), is(new Column("id", "bigint")));
+    assertThat(result.columns.get(1), is(new Column("price", "double")));
+    assertThat(result.columns.get(2), is(new Column("active", "boolean")));
+  }
+
+  @Test
+  public void testEnrich_headerReadAsData_sampledAsWell() throws IOException {
+    // given
+    givenFile("id,price,active,created,name,empty\n1,2,true,,,\n");
+    final HiveTable headerAsData = table.withFormat(TextFormat.DEFAULT);
+
+    // when
+    final HiveTable result = sut.enrich(headerAsData, identity);
+
+    // then
+    assertThat(result.columns.get(0), is(new Column("id", "string")));
+  }
+
+  @Test
+  public void testEnrich_unreadableFile_columnsLeftUntyped() throws IOException {
+    // given
+    when(datasetSource.open(URI, "db", identity)).thenThrow(new IOException("unreachable"));
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+  }
+
+  @Test
+  public void testEnrich_disabled_fileNotRead() throws IOException {
+    // given
+    config.setEnabled(false);
+
+    // when
+    final HiveTable result = sut.enrich(table, identity);
+
+    // then
+    assertThat(result, is(sameInstance(table)));
+  }
+
+  private void givenFile(String content) throws IOException {
+    when(datasetSource.open(URI, "db", identity))
+        .thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+  }
+}
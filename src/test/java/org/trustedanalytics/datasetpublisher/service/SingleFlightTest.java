@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+  private final SingleFlight sut = new SingleFlight();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRun_equalOperationsInFlight_runOnce() throws Exception {
+    // given
+    final AtomicInteger runs = new AtomicInteger();
+    final Future<?> first = executor.submit(() -> sut.run("db.t", "create", () -> {
+      runs.incrementAndGet();
+      block();
+    }));
+    started.await(5, TimeUnit.SECONDS);
+
+    // when
+    final Future<?> second = start(() -> sut.run("db.t", "create", runs::incrementAndGet));
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    // then
+    assertThat(runs.get(), is(1));
+  }
+
+  @Test
+  public void testRun_equalOperationFails_failureShared() throws Exception {
+    // given
+    final IllegalStateException failure = new IllegalStateException("failed");
+    final Future<?> first = executor.submit(() -> sut.run("db.t", "create", () -> {
+      block();
+      throw failure;
+    }));
+    started.await(5, TimeUnit.SECONDS);
+
+    // when
+    final Future<?> second = start(() -> sut.run("db.t", "create", () -> { }));
+    release.countDown();
+
+    // then
+    assertThat(failureOf(first), is(sameInstance(failure)));
+    assertThat(failureOf(second), is(sameInstance(failure)));
+  }
+
+  @Test
+  public void testRun_differentOperations_runInOrderOfArrival() throws Exception {
+    // given
+    final List<String> runs = new CopyOnWriteArrayList<>();
+    final Future<?> create = executor.submit(() -> sut.run("db.t", "create", () -> {
+      block();
+      runs.add("create");
+    }));
+    started.await(5, TimeUnit.SECONDS);
+
+    // when
+    final Future<?> drop = start(() -> sut.run("db.t", "drop", () -> runs.add("drop")));
+    release.countDown();
+    create.get(5, TimeUnit.SECONDS);
+    drop.get(5, TimeUnit.SECONDS);
+
+    // then
+    assertThat(runs, contains("create", "drop"));
+  }
+
+  @Test
+  public void testRun_differentKeys_independent() throws Exception {
+    // given
+    executor.submit(() -> sut.run("db.t", "create", this::block));
+    started.await(5, TimeUnit.SECONDS);
+
+    // when
+    final Future<?> other = executor.submit(() -> sut.run("db.other", "create", () -> { }));
+
+    // then
+    other.get(5, TimeUnit.SECONDS);
+    release.countDown();
+  }
+
+  /**
+   * Starts the task and waits until it's parked waiting for the operation in flight.
+   */
+  private static Future<?> start(Runnable task) throws InterruptedException {
+    final FutureTask<?> future = new FutureTask<>(task, null);
+    final Thread thread = new Thread(future);
+    thread.start();
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    return future;
+  }
+
+  private void block() {
+    started.countDown();
+    try {
+      release.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Throwable failureOf(Future<?> future) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+}
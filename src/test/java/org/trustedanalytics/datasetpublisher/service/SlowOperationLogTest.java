@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class SlowOperationLogTest {
+
+  private final HiveTable table = new HiveTable("db", "table", ImmutableList.of("a", "b"), "/a");
+
+  private Config.SlowLog config;
+
+  @Before
+  public void setUp() {
+    config = new Config.SlowLog();
+    config.setThresholdMillis(0);
+  }
+
+  @Test
+  public void testRecord_slowOperation_keptWithStages() {
+    // given
+    final SlowOperationLog sut = new SlowOperationLog(config);
+    final OperationTrace trace = new OperationTrace();
+    trace.record("connection", TimeUnit.MILLISECONDS.toNanos(20));
+    trace.record("create_table", TimeUnit.MILLISECONDS.toNanos(5));
+    trace.record("create_table", TimeUnit.MILLISECONDS.toNanos(5));
+
+    // when
+    sut.record(HiveMetrics.Operation.CREATE, table, trace, new SQLException("timeout"));
+
+    // then
+    final SlowOperation slow = sut.findRecent().get(0);
+    assertThat(slow.getTable(), is("db.table"));
+    assertThat(slow.getColumns(), is(2));
+    assertThat(slow.getOutcome(), is(SlowOperation.Outcome.FAILED));
+    assertThat(slow.getError(), is("timeout"));
+    assertThat(slow.getStageMillis().get("connection"), is(20L));
+    assertThat(slow.getStageMillis().get("create_table"), is(10L));
+  }
+
+  @Test
+  public void testRecord_fastOperation_skipped() {
+    // given
+    config.setThresholdMillis(TimeUnit.MINUTES.toMillis(1));
+    final SlowOperationLog sut = new SlowOperationLog(config);
+
+    // when
+    sut.record(HiveMetrics.Operation.DROP, table, new OperationTrace(), null);
+
+    // then
+    assertThat(sut.findRecent(), is(empty()));
+  }
+
+  @Test
+  public void testRecord_overCapacity_mostRecentKept() {
+    // given
+    config.setCapacity(2);
+    final SlowOperationLog sut = new SlowOperationLog(config);
+
+    // when
+    sut.record(HiveMetrics.Operation.CREATE, table, new OperationTrace(), null);
+    sut.record(HiveMetrics.Operation.DROP, table, new OperationTrace(), null);
+    sut.record(HiveMetrics.Operation.CREATE, table, new OperationTrace(), null);
+
+    // then
+    assertThat(sut.findRecent(), hasSize(2));
+    assertThat(sut.findRecent().stream().map(SlowOperation::getOperation)
+                   .collect(Collectors.toList()),
+               contains(HiveMetrics.Operation.CREATE, HiveMetrics.Operation.DROP));
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class StatisticsSchedulerTest {
+
+  private static final long NOW = 1_000_000_000L;
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+  private final HiveTable first = new HiveTable("db", "first", ImmutableList.of("id"), "/first");
+  private final HiveTable second = new HiveTable("db", "second", ImmutableList.of("id"), "/second");
+
+  private HiveSessions sessions;
+  private Statement statement;
+  private ExecutorService executor;
+  private JwtToken userIdentity;
+  private Config.Statistics config;
+  private MutableClock clock;
+  private StatisticsScheduler sut;
+
+  @Before
+  public void setUp() throws SQLException {
+    sessions = mock(HiveSessions.class);
+    statement = mock(Statement.class);
+    doAnswer(invocation -> {
+      ((HiveSessions.SessionWork) invocation.getArguments()[3]).execute(statement);
+      return null;
+    }).when(sessions).run(any(), any(), any(), any());
+    executor = mock(ExecutorService.class);
+    userIdentity = mock(JwtToken.class);
+    when(userIdentity.getRawToken()).thenReturn(
+        JwtHelper.encode("{\"user_id\":\"alice\"}", new MacSigner("secret")).getEncoded());
+    config = new Config.Statistics();
+    config.setEnabled(true);
+    clock = new MutableClock(NOW);
+    sut = new StatisticsScheduler(new QueryBuilder(), sessions, config,
+                                  new UserCredentials(new Config.Credentials()), executor, clock);
+  }
+
+  @Test
+  public void testTableCreated_analyzedInBackground() throws SQLException {
+    // when
+    sut.tableCreated(first, userIdentity);
+    verify(sessions, never()).run(any(), any(), any(), any());
+    runSubmitted(1);
+
+    // then
+    verify(statement).executeUpdate("analyze table db.first compute statistics");
+  }
+
+  @Test
+  public void testTableCreated_alreadyPending_analyzedOnce() throws SQLException {
+    // when
+    sut.tableCreated(first, userIdentity);
+    sut.tableCreated(first, userIdentity);
+    runSubmitted(1);
+
+    // then
+    verify(statement, times(1)).executeUpdate("analyze table db.first compute statistics");
+  }
+
+  @Test
+  public void testTableRequested_pending_analyzedFirst() throws SQLException {
+    // given
+    sut.tableCreated(first, userIdentity);
+    sut.tableCreated(second, userIdentity);
+
+    // when
+    sut.tableRequested(first, userIdentity);
+    runSubmitted(2);
+
+    // then
+    final InOrder order = inOrder(statement);
+    order.verify(statement).executeUpdate("analyze table db.first compute statistics");
+    order.verify(statement).executeUpdate("analyze table db.second compute statistics");
+  }
+
+  @Test
+  public void testTableDropped_pending_notAnalyzed() throws SQLException {
+    // given
+    sut.tableCreated(first, userIdentity);
+
+    // when
+    sut.tableDropped(first, userIdentity);
+    runSubmitted(1);
+
+    // then
+    verify(sessions, never()).run(any(), any(), any(), any());
+  }
+
+  @Test
+  public void testTableCreated_columnStatistics_analyzedColumns() throws SQLException {
+    // given
+    config.setColumns(true);
+
+    // when
+    sut.tableCreated(first, userIdentity);
+    runSubmitted(1);
+
+    // then
+    verify(statement).executeUpdate("analyze table db.first compute statistics for columns");
+  }
+
+  @Test
+  public void testTableCreated_disabled_nothingScheduled() {
+    // given
+    config.setEnabled(false);
+
+    // when
+    sut.tableCreated(first, userIdentity);
+
+    // then
+    verify(executor, never()).execute(any());
+  }
+
+  @Test
+  public void testTableCreated_tokenExpiredWhileWaiting_notAnalyzed() {
+    // given
+    sut.tableCreated(first, identity(NOW + HOUR));
+
+    // when
+    clock.advance(2 * HOUR);
+    runSubmitted(1);
+
+    // then
+    verify(sessions, never()).run(any(), any(), any(), any());
+  }
+
+  @Test
+  public void testTableRequested_laterToken_analyzedWithIt() {
+    // given
+    sut.tableCreated(first, identity(NOW + HOUR));
+    final JwtToken later = identity(NOW + 3 * HOUR);
+
+    // when
+    sut.tableRequested(first, later);
+    clock.advance(2 * HOUR);
+    runSubmitted(1);
+
+    // then
+    final ArgumentCaptor<JwtToken> identity = ArgumentCaptor.forClass(JwtToken.class);
+    verify(sessions).run(identity.capture(), any(), any(), any());
+    assertThat(identity.getValue().getRawToken(), is(later.getRawToken()));
+  }
+
+  private static JwtToken identity(long expiresAt) {
+    final JwtToken identity = mock(JwtToken.class);
+    when(identity.getRawToken()).thenReturn(JwtHelper.encode(
+        String.format("{\"user_id\":\"alice\",\"exp\":%d}",
+                      TimeUnit.MILLISECONDS.toSeconds(expiresAt)),
+        new MacSigner("secret")).getEncoded());
+    return identity;
+  }
+
+  private void runSubmitted(int count) {
+    final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(count)).execute(captor.capture());
+    captor.getAllValues().forEach(Runnable::run);
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.trustedanalytics.datasetpublisher.entity.Column;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.datasetpublisher.entity.TextFormat;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+
+public class TableDescriptionTest {
+
+  @Test
+  public void testRead_partitionedTable_columnsAndLocation() throws SQLException {
+    // given
+    final ResultSet rs = mock(ResultSet.class);
+    when(rs.next()).thenReturn(true, true, true, true, true, true, true, true, true, true, false);
+    when(rs.getString(1)).thenReturn("# col_name            ", "", "id                  ",
+                                     "name                ", "", "# Partition Information",
+                                     "year                ", "", "# Detailed Table Information",
+                                     "Location:           ");
+    when(rs.getString(2)).thenReturn("int                 ", "string              ",
+                                     "hdfs://nameservice1/org/data  ");
+    final HiveTable table = new HiveTable("db", "table", Collections.emptyList(), "/org/data");
+
+    // when
+    final HiveTable live = TableDescription.read(table, rs);
+
+    // then
+    assertThat(live.columns, contains(new Column("id", "int"), new Column("name", "string")));
+    assertThat(live.location, is("hdfs://nameservice1/org/data"));
+    assertThat(live.format, is(TextFormat.DEFAULT));
+  }
+
+  @Test
+  public void testRead_tableParameters_format() throws SQLException {
+    // given
+    final ResultSet rs = mock(ResultSet.class);
+    when(rs.next()).thenReturn(true, true, true, true, true, true, true, true, false);
+    when(rs.getString(1)).thenReturn("# col_name            ", "id                  ", "",
+                                     "# Detailed Table Information", "Table Parameters:", "",
+                                     "Storage Desc Params:", "");
+    when(rs.getString(2)).thenReturn("int                 ", "skip.header.line.count",
+                                     "field.delim         ");
+    when(rs.getString(3)).thenReturn("1                   ", "\\t                  ");
+    final HiveTable table = new HiveTable("db", "table", Collections.emptyList(), "/org/data");
+
+    // when
+    final HiveTable live = TableDescription.read(table, rs);
+
+    // then
+    assertThat(live.columns, contains(new Column("id", "int")));
+    assertThat(live.format, is(new TextFormat('\t', true, null)));
+  }
+}
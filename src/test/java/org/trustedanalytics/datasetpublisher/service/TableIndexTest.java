@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.datasetpublisher.entity.HiveTable;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+
+public class TableIndexTest {
+
+  private static final long NOW = 1_000_000L;
+
+  private HiveSessions sessions;
+  private Statement statement;
+  private ScheduledExecutorService executor;
+  private MutableClock clock;
+  private JwtToken alice;
+  private TableIndex sut;
+
+  @Before
+  public void setUp() throws SQLException {
+    sessions = mock(HiveSessions.class);
+    statement = mock(Statement.class);
+    doAnswer(invocation -> {
+      ((HiveSessions.SessionWork) invocation.getArguments()[3]).execute(statement);
+      return null;
+    }).when(sessions).run(any(), any(), any(), any());
+    executor = mock(ScheduledExecutorService.class);
+    clock = new MutableClock(NOW);
+    alice = token("alice");
+    sut = new TableIndex(new QueryBuilder(), sessions, new Config.Index(),
+                         new UserCredentials(new Config.Credentials()), executor, clock);
+  }
+
+  @Test
+  public void testFind_createdTables_pageOrderedByName() {
+    // given
+    sut.tableCreated(table("db", "c"), alice);
+    sut.tableCreated(table("db", "a"), alice);
+    sut.tableCreated(table("db", "b"), alice);
+
+    // when
+    final TableIndex.Page page = sut.find("db", 1, 1, alice);
+
+    // then
+    assertThat(names(page), contains("b"));
+    assertThat(page.getTotal(), is(3));
+    assertThat(page.isReconciled(), is(false));
+  }
+
+  @Test
+  public void testFind_droppedTable_notListed() {
+    // given
+    sut.tableCreated(table("db", "a"), alice);
+    sut.tableCreated(table("db", "b"), alice);
+
+    // when
+    sut.tableDropped(table("db", "a"), alice);
+
+    // then
+    assertThat(names(sut.find("db", 0, 10, alice)), contains("b"));
+  }
+
+  @Test
+  public void testFind_unknownUser_listedAfterReconciledAsUser() throws SQLException {
+    // given
+    final JwtToken bob = token("bob");
+    sut.tableCreated(table("db", "a"), alice);
+    final ResultSet listing = listing();
+    when(listing.next()).thenReturn(true, true, false);
+    when(listing.getString(1)).thenReturn("a", "b");
+
+    // when
+    final TableIndex.Page before = sut.find("db", 0, 10, bob);
+    sut.find("db", 0, 10, bob);
+    runSubmitted(1);
+
+    // then
+    assertThat(before.getTables(), is(empty()));
+    final TableIndex.Page after = sut.find("db", 0, 10, bob);
+    assertThat(names(after), contains("a", "b"));
+    assertThat(after.isReconciled(), is(true));
+  }
+
+  @Test
+  public void testReconcileNext_tableMissingInMetastore_removedUnlessIndexedMeanwhile()
+      throws SQLException {
+    // given
+    sut.tableCreated(table("db", "gone"), alice);
+    sut.tableCreated(table("db", "kept"), alice);
+    clock.advance(1000);
+    final ResultSet listing = listing();
+    when(listing.next()).thenReturn(true).thenAnswer(invocation -> {
+      // table created while the listing is running
+      sut.tableCreated(table("db", "new"), alice);
+      return false;
+    });
+    when(listing.getString(1)).thenReturn("kept");
+
+    // when
+    sut.reconcileNext();
+
+    // then
+    assertThat(names(sut.find("db", 0, 10, alice)), contains("kept", "new"));
+  }
+
+  private ResultSet listing() throws SQLException {
+    final ResultSet rs = mock(ResultSet.class);
+    when(statement.executeQuery("show tables in db")).thenReturn(rs);
+    return rs;
+  }
+
+  private void runSubmitted(int times) {
+    final ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(times)).execute(task.capture());
+    task.getAllValues().forEach(Runnable::run);
+  }
+
+  private static HiveTable table(String databaseName, String tableName) {
+    return new HiveTable(databaseName, tableName, ImmutableList.of("id"), "/" + tableName);
+  }
+
+  private static List<String> names(TableIndex.Page page) {
+    return page.getTables().stream().map(table -> table.tableName).collect(Collectors.toList());
+  }
+
+  private static JwtToken token(String userId) {
+    return new TapOauthToken(JwtHelper.encode(String.format("{\"user_id\":\"%s\"}", userId),
+                                              new MacSigner("secret")).getEncoded());
+  }
+}
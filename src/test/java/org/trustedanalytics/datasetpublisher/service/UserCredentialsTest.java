@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.datasetpublisher.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.trustedanalytics.datasetpublisher.Config;
+import org.trustedanalytics.hadoop.config.client.oauth.JwtToken;
+import org.trustedanalytics.hadoop.config.client.oauth.TapOauthToken;
+
+import java.util.concurrent.TimeUnit;
+
+public class UserCredentialsTest {
+
+  private static final long NOW = 1_000_000_000L;
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+  private UserCredentials sut;
+
+  @Before
+  public void setUp() {
+    sut = new UserCredentials(new Config.Credentials());
+  }
+
+  @Test
+  public void test_identityOf_sameToken_returnsCachedIdentity() {
+    // given
+    final String token = token("alice", NOW + HOUR);
+
+    // when
+    final JwtToken first = sut.identityOf(token);
+    final JwtToken second = sut.identityOf(token);
+
+    // then
+    assertThat(second, is(sameInstance(first)));
+    assertThat(first.getRawToken(), is(token));
+  }
+
+  @Test
+  public void test_identityOf_otherTokenOfSameUser_returnsIdentityOfThatToken() {
+    // given
+    final JwtToken cached = sut.identityOf(token("alice", NOW + 2 * HOUR));
+    final String other = token("alice", NOW + HOUR);
+
+    // when
+    final JwtToken identity = sut.identityOf(other);
+
+    // then
+    assertThat(identity, is(not(sameInstance(cached))));
+    assertThat(identity.getRawToken(), is(other));
+    assertThat(sut.identityOf(other), is(sameInstance(identity)));
+  }
+
+  @Test
+  public void test_identityOf_otherUser_returnsOwnIdentity() {
+    // given
+    final JwtToken alices = sut.identityOf(token("alice", NOW + HOUR));
+
+    // when
+    final JwtToken bobs = sut.identityOf(token("bob", NOW + HOUR));
+
+    // then
+    assertThat(bobs, is(not(sameInstance(alices))));
+    assertThat(bobs.getUserId(), is("bob"));
+  }
+
+  @Test
+  public void test_identityOf_tokenWithoutSubject_returnsIdentityOfToken() {
+    // given
+    final String token = JwtHelper.encode("{\"scope\":[]}", new MacSigner("secret")).getEncoded();
+
+    // when
+    final JwtToken identity = sut.identityOf(token);
+
+    // then
+    assertThat(identity.getRawToken(), is(token));
+  }
+
+  @Test
+  public void test_expiresAt_cachedToken_expiryOfToken() {
+    // given
+    final JwtToken identity = sut.identityOf(token("alice", NOW + HOUR));
+
+    // when
+    final long expiresAt = sut.expiresAt(identity);
+
+    // then
+    assertThat(expiresAt, is(NOW + HOUR));
+  }
+
+  @Test
+  public void test_expiresAt_tokenNotCached_readFromToken() {
+    // given
+    final JwtToken identity = new TapOauthToken(token("bob", NOW + 2 * HOUR));
+
+    // when
+    final long expiresAt = sut.expiresAt(identity);
+
+    // then
+    assertThat(expiresAt, is(NOW + 2 * HOUR));
+  }
+
+  private static String token(String userId, long expiresAt) {
+    final String claims = String.format("{\"user_id\":\"%s\",\"exp\":%d}",
+                                        userId, TimeUnit.MILLISECONDS.toSeconds(expiresAt));
+    return JwtHelper.encode(claims, new MacSigner("secret")).getEncoded();
+  }
+}